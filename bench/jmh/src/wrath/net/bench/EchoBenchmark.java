@@ -0,0 +1,117 @@
+/**
+ * The MIT License (MIT)
+ * Wrath Net Engine Copyright (c) 2016 Trent Spears
+ */
+package wrath.net.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import wrath.net.Client;
+import wrath.net.ClientListener;
+import wrath.net.Packet;
+import wrath.net.Protocol;
+import wrath.net.Server;
+import wrath.net.ServerClient;
+
+/**
+ * Measures round trips through a real {@link wrath.net.Server} and {@link wrath.net.Client} over the loopback interface: the Client sends a packet, the Server echoes it back, and the benchmark waits for it.
+ * UDP datagrams can be lost even on loopback; a round trip that gets no answer within a second is given up, and the number of those is printed when the trial ends.
+ * @author Trent Spears
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EchoBenchmark
+{
+    private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(1);
+
+    @Param({"TCP", "UDP"})
+    public Protocol protocol;
+
+    @Param({"64", "1024"})
+    public int size;
+
+    private final AtomicLong received = new AtomicLong();
+    private Server server;
+    private Client client;
+    private Packet packet;
+    private long sent = 0;
+    private long lost = 0;
+
+    @Setup
+    public void setup() throws InterruptedException
+    {
+        int port = 40600 + protocol.ordinal();
+        server = new Server(protocol, new SendBenchmark.NullServerListener()
+        {
+            @Override
+            public void onReceive(ServerClient client, Packet packet)
+            {
+                client.send(packet);
+            }
+        });
+        server.bindSocket("127.0.0.1", port);
+
+        client = new Client(protocol, new ClientListener()
+        {
+            @Override
+            public void onConnect(Client client) {}
+
+            @Override
+            public void onDisconnect(Client client) {}
+
+            @Override
+            public void onReceive(Client client, Packet packet)
+            {
+                received.incrementAndGet();
+            }
+        });
+        client.connect("127.0.0.1", port);
+        while(server.getNumberOfConnectedClients() == 0 && protocol == Protocol.TCP) Thread.sleep(10);
+        packet = new Packet(new byte[size]);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        if(lost > 0) System.out.println("lost: " + lost + " of " + sent + " round trips");
+        client.disconnect();
+        server.unbindSocket();
+    }
+
+    @Benchmark
+    public long roundTrip()
+    {
+        long target = ++sent;
+        client.send(packet);
+        long deadline = System.nanoTime() + TIMEOUT;
+        long r;
+        while((r = received.get()) < target)
+        {
+            if(System.nanoTime() > deadline)
+            {
+                lost++;
+                // Start over from what did arrive, so the next round trip waits for an answer of its own.
+                sent = received.get();
+                break;
+            }
+            Thread.onSpinWait();
+        }
+        return r;
+    }
+}
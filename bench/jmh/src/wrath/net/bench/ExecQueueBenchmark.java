@@ -0,0 +1,100 @@
+/**
+ * The MIT License (MIT)
+ * Wrath Net Engine Copyright (c) 2016 Trent Spears
+ */
+package wrath.net.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import wrath.net.Packet;
+import wrath.net.Protocol;
+import wrath.net.Server;
+import wrath.net.ServerClient;
+import wrath.net.ServerListener;
+
+/**
+ * Measures how fast the execution threads drain received data: a batch is queued as if a receiving thread got it, and the benchmark waits until onReceive() has seen all of it.
+ * The result is per packet, and covers the queue hand-off, waking the execution threads and the listener call.
+ * @author Trent Spears
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExecQueueBenchmark
+{
+    private static final int BATCH = 1024;
+    private static final int CLIENTS = 16;
+
+    @Param({"1", "4"})
+    public int execThreads;
+
+    @Param({"yield", "park"})
+    public String waitStrategy;
+
+    private final AtomicLong processed = new AtomicLong();
+    private LoopbackServerManager man;
+    private ServerClient[] clients;
+    private Packet[] packets;
+    private long expected = 0;
+
+    @Setup
+    public void setup()
+    {
+        Server.getServerConfig().setProperty("ExecThreads", String.valueOf(execThreads));
+        Server.getServerConfig().setProperty("ExecWaitStrategy", waitStrategy);
+        man = new LoopbackServerManager(new Server(Protocol.UDP, new ServerListener()
+        {
+            @Override
+            public void onClientConnect(ServerClient client) {}
+
+            @Override
+            public void onClientDisconnect(ServerClient client) {}
+
+            @Override
+            public void onReceive(ServerClient client, Packet packet)
+            {
+                processed.incrementAndGet();
+            }
+        }));
+        man.bindSocket("127.0.0.1", 0);
+
+        clients = new ServerClient[CLIENTS];
+        for(int i = 0; i < CLIENTS; i++) clients[i] = man.connect("Client" + i);
+        // The packets are not pooled, so handing the same ones over again is safe.
+        packets = new Packet[BATCH];
+        for(int i = 0; i < BATCH; i++) packets[i] = new Packet(new byte[64]);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        man.unbindSocket();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long drain()
+    {
+        for(int i = 0; i < BATCH; i++) man.deliver(clients[i % CLIENTS], packets[i]);
+        expected += BATCH;
+        long p;
+        while((p = processed.get()) < expected) Thread.onSpinWait();
+        return p;
+    }
+}
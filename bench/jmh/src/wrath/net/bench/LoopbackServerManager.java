@@ -0,0 +1,94 @@
+/**
+ * The MIT License (MIT)
+ * Wrath Net Engine Copyright (c) 2016 Trent Spears
+ */
+package wrath.net.bench;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import wrath.net.Packet;
+import wrath.net.Server;
+import wrath.net.ServerClient;
+import wrath.net.managers.ServerManager;
+
+/**
+ * A {@link wrath.net.managers.ServerManager} without a socket, so benchmarks can measure the send and receive pipelines on their own.
+ * Sent data is only counted, and data is "received" by handing it straight to {@link #deliver(wrath.net.ServerClient, wrath.net.Packet)}.
+ * @author Trent Spears
+ */
+public class LoopbackServerManager extends ServerManager
+{
+    private volatile boolean bound = false;
+    private long bytesPushed = 0;
+
+    /**
+     * Constructor.
+     * @param server The {@link wrath.net.Server} whose listener and config are used. It is never bound itself.
+     */
+    public LoopbackServerManager(Server server)
+    {
+        super(server);
+    }
+
+    /**
+     * Adds a Client to the Server as if it had connected from the loopback address.
+     * @param identifier The name of the Client.
+     * @return Returns the connected {@link wrath.net.ServerClient}.
+     */
+    public ServerClient connect(String identifier)
+    {
+        ServerClient c = new ServerClient(server, InetAddress.getLoopbackAddress(), 0, identifier);
+        clients.add(c);
+        onClientConnect(c);
+        return c;
+    }
+
+    /**
+     * Hands data to the Server as if the Client had sent it.
+     * @param client The {@link wrath.net.ServerClient} the data is from.
+     * @param packet The received {@link wrath.net.Packet}.
+     */
+    public void deliver(ServerClient client, Packet packet)
+    {
+        receive(client, packet);
+    }
+
+    /**
+     * Gets the number of bytes pushed to the socket so far.
+     * @return Returns the number of bytes pushed.
+     */
+    public long getBytesPushed()
+    {
+        return bytesPushed;
+    }
+
+    @Override
+    protected void closeSocket()
+    {
+        bound = false;
+    }
+
+    @Override
+    protected void createSocket(String ip, int port)
+    {
+        // There is nothing to receive from, so the receive thread only has to exist.
+        recvThread = new Thread(() -> {});
+        recvThread.setDaemon(true);
+        bound = true;
+    }
+
+    @Override
+    public boolean isBound()
+    {
+        return bound;
+    }
+
+    @Override
+    protected void pushData(ServerClient client, ByteBuffer data)
+    {
+        bytesPushed += data.remaining();
+    }
+
+    @Override
+    protected void removeClient(ServerClient client) {}
+}
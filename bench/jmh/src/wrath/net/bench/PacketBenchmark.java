@@ -0,0 +1,103 @@
+/**
+ * The MIT License (MIT)
+ * Wrath Net Engine Copyright (c) 2016 Trent Spears
+ */
+package wrath.net.bench;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import wrath.net.Packet;
+
+/**
+ * Measures building Packets from bytes and objects, and reading objects back out of them.
+ * The payloads cover a built-in codec (String), a primitive array codec (int[]) and a type that falls back to Java serialization.
+ * @author Trent Spears
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PacketBenchmark
+{
+    @Param({"string", "ints", "serializable"})
+    public String payload;
+
+    private byte[] raw;
+    private Serializable object;
+    private Serializable[] objects;
+    private byte[] encoded;
+    private byte[] encodedArray;
+
+    @Setup
+    public void setup()
+    {
+        if(payload.equals("string")) object = "The quick brown fox jumps over the lazy dog";
+        else if(payload.equals("ints")) object = new int[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16};
+        else object = new Position(12.5f, 3.25f, -7f);
+        objects = new Serializable[]{object, 42, "name"};
+        raw = new byte[64];
+        encoded = new Packet(object).getRawData();
+        encodedArray = new Packet(objects).getRawData();
+    }
+
+    @Benchmark
+    public Packet fromBytes()
+    {
+        return new Packet(raw);
+    }
+
+    @Benchmark
+    public Packet fromObject()
+    {
+        return new Packet(object);
+    }
+
+    @Benchmark
+    public Packet fromObjectArray()
+    {
+        return new Packet(objects);
+    }
+
+    @Benchmark
+    public Object getDataAsObject()
+    {
+        // A Packet caches what it decoded, so every call needs a fresh one.
+        return new Packet(encoded).getDataAsObject();
+    }
+
+    @Benchmark
+    public Object[] getDataAsObjectArray()
+    {
+        return new Packet(encodedArray).getDataAsObjectArray();
+    }
+
+    /**
+     * A small user type without a codec, so it goes through Java serialization.
+     */
+    public static class Position implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        public final float x, y, z;
+
+        public Position(float x, float y, float z)
+        {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+    }
+}
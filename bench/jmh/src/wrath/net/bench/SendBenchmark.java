@@ -0,0 +1,116 @@
+/**
+ * The MIT License (MIT)
+ * Wrath Net Engine Copyright (c) 2016 Trent Spears
+ */
+package wrath.net.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.spec.SecretKeySpec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import wrath.net.Packet;
+import wrath.net.Protocol;
+import wrath.net.Server;
+import wrath.net.ServerClient;
+import wrath.net.ServerListener;
+import wrath.util.Compression;
+
+/**
+ * Measures {@link wrath.net.managers.ServerManager#send(wrath.net.ServerClient, wrath.net.Packet)} and broadcasting, with compression and encryption on and off.
+ * The Server has no socket, so this is the cost of encoding and handing data to the protocol, without the system calls.
+ * @author Trent Spears
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SendBenchmark
+{
+    @Param({"false", "true"})
+    public boolean compress;
+
+    @Param({"false", "true"})
+    public boolean encrypt;
+
+    @Param({"64", "1024"})
+    public int size;
+
+    private LoopbackServerManager man;
+    private ServerClient client;
+    private List<ServerClient> recipients;
+    private Packet packet;
+
+    @Setup
+    public void setup()
+    {
+        man = new LoopbackServerManager(new Server(Protocol.UDP, new NullServerListener()));
+        man.bindSocket("127.0.0.1", 0);
+        if(compress) man.enableDataCompression(Compression.CompressionType.DEFLATE);
+        if(encrypt)
+        {
+            byte[] key = new byte[16];
+            new Random(1).nextBytes(key);
+            man.enableDataEncryption(new SecretKeySpec(key, "AES"));
+        }
+
+        recipients = new ArrayList<>();
+        for(int i = 0; i < 16; i++) recipients.add(man.connect("Client" + i));
+        client = recipients.get(0);
+
+        // Text-like data, so compression has something to do above the threshold.
+        byte[] data = new byte[size];
+        Random r = new Random(2);
+        for(int i = 0; i < size; i++) data[i] = (byte) ('a' + r.nextInt(8));
+        packet = new Packet(data);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        man.unbindSocket();
+    }
+
+    @Benchmark
+    public long send()
+    {
+        man.send(client, packet);
+        return man.getBytesPushed();
+    }
+
+    @Benchmark
+    public long broadcast()
+    {
+        man.broadcast(recipients, packet);
+        return man.getBytesPushed();
+    }
+
+    /**
+     * Listener that ignores everything.
+     */
+    public static class NullServerListener implements ServerListener
+    {
+        @Override
+        public void onClientConnect(ServerClient client) {}
+
+        @Override
+        public void onClientDisconnect(ServerClient client) {}
+
+        @Override
+        public void onReceive(ServerClient client, Packet packet) {}
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * The MIT License (MIT)
+ * Wrath Net Engine Copyright (c) 2016 Trent Spears
+ */
+package wrath.net.bench;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import wrath.net.Packet;
+import wrath.net.Protocol;
+import wrath.net.Server;
+import wrath.net.ServerClient;
+import wrath.net.ServerListener;
+import wrath.net.managers.FrameDecoder;
+import wrath.net.managers.NetThreadFactory;
+
+/**
+ * Compares the blocking TCP Server running on platform threads against the same Server running on virtual threads.
+ * Opens many raw connections from a single thread, then measures connect time, thread count, heap usage and echo throughput.
+ * Usage: ThreadModeBenchmark [platform|virtual] [connections] [rounds]
+ * Large connection counts need a raised open file limit (two descriptors per connection), e.g. "ulimit -n 200000".
+ * @author Trent Spears
+ */
+public class ThreadModeBenchmark
+{
+    public static void main(String[] args) throws Exception
+    {
+        String mode = args.length > 0 ? args[0] : "virtual";
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int port = 40500;
+
+        Server.getServerConfig().setProperty("ThreadMode", mode);
+        Server.getServerConfig().setProperty("TcpBacklog", "4096");
+        Server server = new Server(Protocol.TCP, new ServerListener()
+        {
+            @Override
+            public void onClientConnect(ServerClient client) {}
+
+            @Override
+            public void onClientDisconnect(ServerClient client) {}
+
+            @Override
+            public void onReceive(ServerClient client, Packet packet)
+            {
+                client.send(packet);
+            }
+        });
+        server.bindSocket("127.0.0.1", port);
+
+        // Connect
+        long start = System.nanoTime();
+        Socket[] socks = new Socket[connections];
+        for(int i = 0; i < connections; i++)
+        {
+            socks[i] = new Socket();
+            socks[i].setTcpNoDelay(true);
+            socks[i].connect(new InetSocketAddress("127.0.0.1", port));
+        }
+        while(server.getNumberOfConnectedClients() < connections) Thread.sleep(10);
+        double connectSecs = (System.nanoTime() - start) / 1e9;
+
+        System.gc();
+        long heap = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        // Echo
+        byte[] msg = new byte[64];
+        byte[] header = FrameDecoder.header(msg.length);
+        OutputStream[] outs = new OutputStream[connections];
+        InputStream[] ins = new InputStream[connections];
+        FrameDecoder[] decoders = new FrameDecoder[connections];
+        for(int i = 0; i < connections; i++)
+        {
+            outs[i] = socks[i].getOutputStream();
+            ins[i] = new BufferedInputStream(socks[i].getInputStream());
+            decoders[i] = new FrameDecoder(1024);
+        }
+
+        start = System.nanoTime();
+        for(int r = 0; r < rounds; r++)
+        {
+            for(OutputStream out : outs)
+            {
+                out.write(header);
+                out.write(msg);
+            }
+            for(int i = 0; i < connections; i++) decoders[i].read(ins[i]);
+        }
+        double echoSecs = (System.nanoTime() - start) / 1e9;
+
+        System.out.println("Mode:                " + mode + (mode.equalsIgnoreCase("virtual") && !NetThreadFactory.isVirtualThreadSupported() ? " (unsupported by this JDK, ran on platform threads)" : ""));
+        System.out.println("Connections:         " + connections);
+        System.out.println("Connect time:        " + String.format("%.2f", connectSecs) + "s");
+        System.out.println("Platform threads:    " + threads);
+        System.out.println("Heap after connect:  " + (heap / (1024 * 1024)) + "MB");
+        System.out.println("Echo round trips:    " + String.format("%.0f", (double) connections * rounds / echoSecs) + "/s");
+
+        for(Socket s : socks)
+            try
+            {
+                s.close();
+            }
+            catch(IOException e){}
+        server.unbindSocket();
+        System.exit(0);
+    }
+}
@@ -0,0 +1,191 @@
+/**
+ * The MIT License (MIT)
+ * Wrath Net Engine Copyright (c) 2016 Trent Spears
+ */
+package wrath.net;
+
+import wrath.net.managers.NetThreadFactory;
+
+/**
+ * Class to hand out re-usable byte arrays for received data, so that receiving a packet does not create garbage.
+ * Arrays come in power-of-two size classes from 64B to 64KB; larger requests are allocated normally and are never pooled.
+ * Each thread keeps a small cache of arrays per size class and trades them with a shared pool in batches, so most allocations and releases never touch a lock.
+ * @author Trent Spears
+ */
+public final class BufferPool
+{
+    private static final int MIN_SHIFT = 6;
+    private static final int MAX_SHIFT = 16;
+    private static final int CLASSES = MAX_SHIFT - MIN_SHIFT + 1;
+    private static final int CACHE_SIZE = 32;
+    private static final int SHARED_BYTES = 4 * 1024 * 1024;
+
+    private static final SharedStack[] SHARED = new SharedStack[CLASSES];
+    private static final Cache NO_CACHE = new Cache(0);
+    private static final ThreadLocal<Cache> CACHE = ThreadLocal.withInitial(() ->
+        // Virtual threads are too many and too short-lived to each keep their own cache.
+        NetThreadFactory.isVirtualThread(Thread.currentThread()) ? NO_CACHE : new Cache(CACHE_SIZE)
+    );
+
+    static
+    {
+        for(int i = 0; i < CLASSES; i++) SHARED[i] = new SharedStack(Math.max(16, SHARED_BYTES >>> (i + MIN_SHIFT)));
+    }
+
+    private BufferPool() {}
+
+    /**
+     * Borrows a buffer that can hold at least the specified number of bytes.
+     * The buffer holds one reference, which must be released when it is no longer needed.
+     * @param size The minimum number of bytes the buffer must hold.
+     * @return Returns a {@link wrath.net.PooledBuffer} with at least the specified capacity.
+     */
+    public static PooledBuffer allocate(int size)
+    {
+        int c = sizeClass(size);
+        if(c < 0) return allocate(size, false);
+
+        Cache cache = CACHE.get();
+        PooledBuffer b = cache.pop(c);
+        if(b == null)
+        {
+            cache.refill(c);
+            b = cache.pop(c);
+            if(b == null) b = SHARED[c].pop();
+            if(b == null) b = new PooledBuffer(new byte[1 << (c + MIN_SHIFT)], c);
+        }
+        b.reset();
+        return b;
+    }
+
+    /**
+     * Borrows a buffer that can hold at least the specified number of bytes, or allocates an exactly sized one that is never pooled.
+     * @param size The minimum number of bytes the buffer must hold.
+     * @param pooled If false, a new array of exactly the specified size is allocated instead of borrowing one.
+     * @return Returns a {@link wrath.net.PooledBuffer} with at least the specified capacity.
+     */
+    public static PooledBuffer allocate(int size, boolean pooled)
+    {
+        if(pooled) return allocate(size);
+        PooledBuffer b = new PooledBuffer(new byte[size], -1);
+        b.reset();
+        return b;
+    }
+    
+    /**
+     * Gives a buffer whose last reference was released back to the pool.
+     * @param b The {@link wrath.net.PooledBuffer} to give back.
+     */
+    static void recycle(PooledBuffer b)
+    {
+        if(b.sizeClass < 0) return;
+        Cache cache = CACHE.get();
+        if(!cache.push(b))
+        {
+            cache.spill(b.sizeClass);
+            if(!cache.push(b)) SHARED[b.sizeClass].push(b);
+        }
+    }
+
+    /**
+     * Gets the size class that can hold the specified number of bytes.
+     * @return Returns the size class, or -1 if the size is too large to be pooled.
+     */
+    private static int sizeClass(int size)
+    {
+        if(size <= (1 << MIN_SHIFT)) return 0;
+        int c = 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+        return c < CLASSES ? c : -1;
+    }
+
+    /**
+     * Per-thread cache of buffers for each size class.
+     */
+    private static class Cache
+    {
+        private final PooledBuffer[][] entries = new PooledBuffer[CLASSES][];
+        private final int[] counts = new int[CLASSES];
+        private final int size;
+
+        private Cache(int size)
+        {
+            this.size = size;
+        }
+
+        private PooledBuffer pop(int c)
+        {
+            if(counts[c] == 0) return null;
+            PooledBuffer b = entries[c][--counts[c]];
+            entries[c][counts[c]] = null;
+            return b;
+        }
+
+        private boolean push(PooledBuffer b)
+        {
+            int c = b.sizeClass;
+            if(counts[c] >= size) return false;
+            if(entries[c] == null) entries[c] = new PooledBuffer[size];
+            entries[c][counts[c]++] = b;
+            return true;
+        }
+
+        private void refill(int c)
+        {
+            if(size == 0) return;
+            if(entries[c] == null) entries[c] = new PooledBuffer[size];
+            counts[c] += SHARED[c].popBatch(entries[c], counts[c], size / 2);
+        }
+
+        private void spill(int c)
+        {
+            int n = size / 2;
+            if(n == 0) return;
+            counts[c] -= n;
+            SHARED[c].pushBatch(entries[c], counts[c], n);
+        }
+    }
+
+    /**
+     * Bounded stack of buffers for one size class, shared between all threads.
+     */
+    private static class SharedStack
+    {
+        private final PooledBuffer[] entries;
+        private int count = 0;
+
+        private SharedStack(int capacity)
+        {
+            this.entries = new PooledBuffer[capacity];
+        }
+
+        private synchronized PooledBuffer pop()
+        {
+            if(count == 0) return null;
+            PooledBuffer b = entries[--count];
+            entries[count] = null;
+            return b;
+        }
+
+        private synchronized int popBatch(PooledBuffer[] dst, int off, int max)
+        {
+            int n = Math.min(max, count);
+            count -= n;
+            System.arraycopy(entries, count, dst, off, n);
+            for(int i = count; i < count + n; i++) entries[i] = null;
+            return n;
+        }
+
+        private synchronized void push(PooledBuffer b)
+        {
+            if(count < entries.length) entries[count++] = b;
+        }
+
+        private synchronized void pushBatch(PooledBuffer[] src, int off, int n)
+        {
+            int m = Math.min(n, entries.length - count);
+            System.arraycopy(src, off, entries, count, m);
+            count += m;
+            for(int i = off; i < off + n; i++) src[i] = null;
+        }
+    }
+}
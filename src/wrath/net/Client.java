@@ -8,9 +8,12 @@ import java.io.File;
 import java.io.Serializable;
 import javax.crypto.spec.SecretKeySpec;
 import wrath.net.managers.ClientManager;
+import wrath.net.managers.ClientNioTcpManager;
+import wrath.net.managers.ClientNioUdpManager;
 import wrath.net.managers.ClientRudpManager;
 import wrath.net.managers.ClientTcpManager;
 import wrath.net.managers.ClientUdpManager;
+import wrath.net.managers.WaitStrategy;
 import wrath.util.Compression;
 import wrath.util.Config;
 
@@ -29,6 +32,7 @@ public class Client
     
     /**
      * Constructor.
+     * If the Client config option "TcpNonBlocking" or "UdpNonBlocking" is true, the connection is served by the {@link wrath.net.managers.ClientSelectorGroup} shared by all Clients instead of a receive Thread of its own.
      * @param protocol The {@link wrath.net.Protocol} to use in the connection. This cannot be changed.
      * @param listener The {@link wrath.net.ClientListener} to report received data to.
      */
@@ -37,7 +41,9 @@ public class Client
         this.proto = protocol;
         this.listener = listener;
         
-        if(proto == Protocol.TCP) man = new ClientTcpManager(this);
+        if(proto == Protocol.TCP && CFG.getBoolean("TcpNonBlocking", false)) man = new ClientNioTcpManager(this);
+        else if(proto == Protocol.TCP) man = new ClientTcpManager(this);
+        else if(proto == Protocol.UDP && CFG.getBoolean("UdpNonBlocking", false)) man = new ClientNioUdpManager(this);
         else if(proto == Protocol.UDP) man = new ClientUdpManager(this);
         else man = new ClientRudpManager(this);
     }
@@ -82,7 +88,7 @@ public class Client
     
     /**
      * Enables data being sent and received to be compressed and decompressed in specified format.
-     * WARNING: This should only be enabled when sending large amounts of data.
+     * Packets smaller than the "CompressionThreshold" config option (default 128 bytes), or that would not get smaller, are sent uncompressed.
      * @param format The format to compress the data with.
      */
     public void enableDataCompression(Compression.CompressionType format)
@@ -92,6 +98,7 @@ public class Client
     
     /**
      * Enables all data going through this Client->Server connection to be encrypted/decrypted with the specified phrase/key.
+     * Data is encrypted with AES-GCM, so packets that were tampered with are dropped. The key must be a 128, 192 or 256 bit AES key.
      * @param key The Key generated from {@link wrath.util.Encryption#generateKey(java.lang.String, java.lang.String) }.
      * WARNING: The Server and Client must both have encryption enabled with the same key.
      * WARNING: Enabling this process will slow the connection noticeably.
@@ -101,6 +108,15 @@ public class Client
         man.enableDataEncryption(key);
     }
     
+    /**
+     * Writes any data held back by the {@link wrath.net.managers.FlushPolicy} to the socket.
+     * @see wrath.net.managers.ClientManager#flush() 
+     */
+    public void flush()
+    {
+        man.flush();
+    }
+    
     /**
      * Gets the {@link wrath.util.Config} containing options for the Client.
      * @return Returns the {@link wrath.util.Config} containing options for the Client.
@@ -138,6 +154,16 @@ public class Client
         return man.getConnectionState();
     }
     
+    /**
+     * Gets a snapshot of the Client's traffic, drops, inbound queue depth, and decode and onReceive() times.
+     * @see wrath.net.managers.ClientManager#getMetrics() 
+     * @return Returns a {@link wrath.net.Metrics} snapshot of the Client's statistics.
+     */
+    public Metrics getMetrics()
+    {
+        return man.getMetrics();
+    }
+    
     /**
      * Gets the IP Address/Hostname of the current or last Server in the form of a String.
      * Returns "0.0.0.0" if never connected.
@@ -209,6 +235,16 @@ public class Client
         this.listener = listener;
     }
     
+    /**
+     * Changes what the Client's execution thread does while there is no data to process, trading latency for CPU usage.
+     * @see wrath.net.managers.ClientManager#setWaitStrategy(wrath.net.managers.WaitStrategy) 
+     * @param strategy The {@link wrath.net.managers.WaitStrategy} to use.
+     */
+    public void setWaitStrategy(WaitStrategy strategy)
+    {
+        man.setWaitStrategy(strategy);
+    }
+    
     @Override
     public String toString()
     {
@@ -12,6 +12,7 @@ public interface ClientListener
 {
     /**
      * Method called when data is received from a server.
+     * The packet may be backed by a pooled buffer that is re-used once this method returns. Call {@link wrath.net.Packet#retain()} to keep it longer.
      * @param client The {@link wrath.net.Client} that is receiving the data.
      * @param packet The {@link wrath.net.Packet} containing the data.
      */
@@ -0,0 +1,755 @@
+/**
+ * The MIT License (MIT)
+ * Wrath Net Engine Copyright (c) 2016 Trent Spears
+ */
+package wrath.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class to convert objects to and from Packet data using registered {@link wrath.net.PacketCodec}s.
+ * Encoded data starts with a marker byte and the varint type ID of the codec, followed by the codec's own format.
+ * Common types (boxed primitives, Strings, primitive arrays, String[] and Object[]) have built-in codecs with IDs below {@link #FIRST_USER_ID}.
+ * Codecs are looked up by exact class, so arrays of other types, such as Integer[], are Java serialized and keep their type.
+ * Serializable objects without a codec fall back to Java serialization, which can be turned off; data that starts with the Java serialization stream header is read the same way, so older peers keep working.
+ * @author Trent Spears
+ */
+public final class CodecRegistry
+{
+    /**
+     * The lowest type ID that can be given to a user codec. Lower IDs are reserved for built-in codecs.
+     */
+    public static final int FIRST_USER_ID = 32;
+    /**
+     * The highest type ID that can be given to a codec.
+     */
+    public static final int MAX_ID = 0xFFFF;
+
+    private static final byte MARKER = (byte) 0xCB;
+    private static final int ID_NULL = 0;
+    private static final int ID_JAVA = 17;
+
+    private static final ConcurrentHashMap<Class<?>, Entry> BY_CLASS = new ConcurrentHashMap<>();
+    private static volatile Entry[] byId = new Entry[FIRST_USER_ID];
+    private static volatile boolean javaSerialization = true;
+
+    static
+    {
+        builtIn(1, Boolean.class, new PacketCodec<Boolean>()
+        {
+            @Override public Boolean decode(DataInput in) throws IOException { return in.readBoolean(); }
+            @Override public void encode(Boolean value, DataOutput out) throws IOException { out.writeBoolean(value); }
+        });
+        builtIn(2, Byte.class, new PacketCodec<Byte>()
+        {
+            @Override public Byte decode(DataInput in) throws IOException { return in.readByte(); }
+            @Override public void encode(Byte value, DataOutput out) throws IOException { out.writeByte(value); }
+        });
+        builtIn(3, Short.class, new PacketCodec<Short>()
+        {
+            @Override public Short decode(DataInput in) throws IOException { return in.readShort(); }
+            @Override public void encode(Short value, DataOutput out) throws IOException { out.writeShort(value); }
+        });
+        builtIn(4, Character.class, new PacketCodec<Character>()
+        {
+            @Override public Character decode(DataInput in) throws IOException { return in.readChar(); }
+            @Override public void encode(Character value, DataOutput out) throws IOException { out.writeChar(value); }
+        });
+        builtIn(5, Integer.class, new PacketCodec<Integer>()
+        {
+            @Override public Integer decode(DataInput in) throws IOException { return in.readInt(); }
+            @Override public void encode(Integer value, DataOutput out) throws IOException { out.writeInt(value); }
+        });
+        builtIn(6, Long.class, new PacketCodec<Long>()
+        {
+            @Override public Long decode(DataInput in) throws IOException { return in.readLong(); }
+            @Override public void encode(Long value, DataOutput out) throws IOException { out.writeLong(value); }
+        });
+        builtIn(7, Float.class, new PacketCodec<Float>()
+        {
+            @Override public Float decode(DataInput in) throws IOException { return in.readFloat(); }
+            @Override public void encode(Float value, DataOutput out) throws IOException { out.writeFloat(value); }
+        });
+        builtIn(8, Double.class, new PacketCodec<Double>()
+        {
+            @Override public Double decode(DataInput in) throws IOException { return in.readDouble(); }
+            @Override public void encode(Double value, DataOutput out) throws IOException { out.writeDouble(value); }
+        });
+        builtIn(9, String.class, new PacketCodec<String>()
+        {
+            @Override
+            public String decode(DataInput in) throws IOException
+            {
+                byte[] r = new byte[readLength(in)];
+                in.readFully(r);
+                return new String(r, StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public void encode(String value, DataOutput out) throws IOException
+            {
+                byte[] r = value.getBytes(StandardCharsets.UTF_8);
+                writeVarint(r.length, out);
+                out.write(r);
+            }
+        });
+        builtIn(10, byte[].class, new PacketCodec<byte[]>()
+        {
+            @Override
+            public byte[] decode(DataInput in) throws IOException
+            {
+                byte[] r = new byte[readLength(in)];
+                in.readFully(r);
+                return r;
+            }
+
+            @Override
+            public void encode(byte[] value, DataOutput out) throws IOException
+            {
+                writeVarint(value.length, out);
+                out.write(value);
+            }
+        });
+        builtIn(11, int[].class, new PacketCodec<int[]>()
+        {
+            @Override
+            public int[] decode(DataInput in) throws IOException
+            {
+                int[] r = new int[readLength(in)];
+                for(int i = 0; i < r.length; i++) r[i] = in.readInt();
+                return r;
+            }
+
+            @Override
+            public void encode(int[] value, DataOutput out) throws IOException
+            {
+                writeVarint(value.length, out);
+                for(int v : value) out.writeInt(v);
+            }
+        });
+        builtIn(12, long[].class, new PacketCodec<long[]>()
+        {
+            @Override
+            public long[] decode(DataInput in) throws IOException
+            {
+                long[] r = new long[readLength(in)];
+                for(int i = 0; i < r.length; i++) r[i] = in.readLong();
+                return r;
+            }
+
+            @Override
+            public void encode(long[] value, DataOutput out) throws IOException
+            {
+                writeVarint(value.length, out);
+                for(long v : value) out.writeLong(v);
+            }
+        });
+        builtIn(13, float[].class, new PacketCodec<float[]>()
+        {
+            @Override
+            public float[] decode(DataInput in) throws IOException
+            {
+                float[] r = new float[readLength(in)];
+                for(int i = 0; i < r.length; i++) r[i] = in.readFloat();
+                return r;
+            }
+
+            @Override
+            public void encode(float[] value, DataOutput out) throws IOException
+            {
+                writeVarint(value.length, out);
+                for(float v : value) out.writeFloat(v);
+            }
+        });
+        builtIn(14, double[].class, new PacketCodec<double[]>()
+        {
+            @Override
+            public double[] decode(DataInput in) throws IOException
+            {
+                double[] r = new double[readLength(in)];
+                for(int i = 0; i < r.length; i++) r[i] = in.readDouble();
+                return r;
+            }
+
+            @Override
+            public void encode(double[] value, DataOutput out) throws IOException
+            {
+                writeVarint(value.length, out);
+                for(double v : value) out.writeDouble(v);
+            }
+        });
+        builtIn(15, String[].class, new PacketCodec<String[]>()
+        {
+            @Override
+            public String[] decode(DataInput in) throws IOException
+            {
+                String[] r = new String[readLength(in)];
+                for(int i = 0; i < r.length; i++) r[i] = (String) readObject(in);
+                return r;
+            }
+
+            @Override
+            public void encode(String[] value, DataOutput out) throws IOException
+            {
+                writeVarint(value.length, out);
+                for(String v : value) writeObject(v, out);
+            }
+        });
+        builtIn(16, Object[].class, new PacketCodec<Object[]>()
+        {
+            @Override
+            public Object[] decode(DataInput in) throws IOException
+            {
+                Object[] r = new Object[readLength(in)];
+                for(int i = 0; i < r.length; i++) r[i] = readObject(in);
+                return r;
+            }
+
+            @Override
+            public void encode(Object[] value, DataOutput out) throws IOException
+            {
+                writeVarint(value.length, out);
+                for(Object v : value) writeObject(v, out);
+            }
+        });
+        // Objects nested in another codec's data that have no codec of their own.
+        builtIn(ID_JAVA, Serializable.class, new PacketCodec<Serializable>()
+        {
+            @Override
+            public Serializable decode(DataInput in) throws IOException
+            {
+                byte[] r = new byte[readLength(in)];
+                in.readFully(r);
+                return (Serializable) deserialize(r, 0, r.length);
+            }
+
+            @Override
+            public void encode(Serializable value, DataOutput out) throws IOException
+            {
+                byte[] r = serialize(value);
+                writeVarint(r.length, out);
+                out.write(r);
+            }
+        });
+    }
+
+    private CodecRegistry() {}
+
+    /**
+     * Registers a built-in codec.
+     */
+    private static <T> void builtIn(int id, Class<T> type, PacketCodec<T> codec)
+    {
+        Entry e = new Entry(id, codec);
+        byId[id] = e;
+        if(id != ID_JAVA) BY_CLASS.put(type, e);
+    }
+
+    /**
+     * Converts Packet data back into an object.
+     * @param data The {@link java.nio.ByteBuffer} holding the data between its position and limit. Its position is not changed.
+     * @return Returns the object represented by the data, which may be null.
+     * @throws IOException Thrown if the data is corrupted, uses an unknown type ID, or is Java serialized while Java serialization is turned off.
+     */
+    public static Object decode(ByteBuffer data) throws IOException
+    {
+        data = data.slice();
+        int length = data.limit();
+        if(length >= 2 && data.get(0) == (byte) 0xAC && data.get(1) == (byte) 0xED)
+        {
+            if(data.hasArray()) return deserialize(data.array(), data.arrayOffset(), length);
+            byte[] r = new byte[length];
+            data.get(r);
+            return deserialize(r, 0, length);
+        }
+        if(length == 0 || data.get(0) != MARKER) throw new IOException("Unknown data format!");
+
+        data.position(1);
+        return readObject(new Input(data));
+    }
+
+    /**
+     * Converts an object to Packet data.
+     * @param object The object to convert. May be null.
+     * @return Returns a {@link java.nio.ByteBuffer} holding the converted data.
+     * @throws IOException Thrown if the object has no codec and cannot be Java serialized.
+     */
+    public static ByteBuffer encode(Object object) throws IOException
+    {
+        if(object != null && !BY_CLASS.containsKey(object.getClass()))
+            // Kept as a plain Java serialization stream, so peers without the codec registry can still read it.
+            return ByteBuffer.wrap(serialize(object));
+
+        Output out = new Output();
+        out.writeByte(MARKER);
+        writeObject(object, out);
+        return ByteBuffer.wrap(out.buf, 0, out.count);
+    }
+
+    /**
+     * Gets the codec registered for the specified type.
+     * @param type The type of object to look up.
+     * @return Returns the {@link wrath.net.PacketCodec} registered for the type, or null if there is none.
+     */
+    public static PacketCodec<?> getCodec(Class<?> type)
+    {
+        Entry e = BY_CLASS.get(type);
+        return e == null ? null : e.codec;
+    }
+
+    /**
+     * Checks if objects without a codec are converted with Java serialization.
+     * @return Returns true if Java serialization is used as a fallback. Otherwise false.
+     */
+    public static boolean isJavaSerializationEnabled()
+    {
+        return javaSerialization;
+    }
+
+    /**
+     * Reads the length of an array or String, checking that it is not negative or longer than the remaining data.
+     */
+    private static int readLength(DataInput in) throws IOException
+    {
+        int r = readVarint(in);
+        // Every element takes at least one byte, so a corrupt length cannot make us allocate more than the data itself.
+        if(r < 0 || (in instanceof Input && r > ((Input) in).buf.remaining())) throw new IOException("Malformed length!");
+        return r;
+    }
+
+    /**
+     * Reads an object written by {@link #writeObject(java.lang.Object, java.io.DataOutput)}.
+     * Meant to be used by {@link wrath.net.PacketCodec}s to read nested objects.
+     * @param in The {@link java.io.DataInput} to read from.
+     * @return Returns the object that was read, which may be null.
+     * @throws IOException Thrown if the data is corrupted or uses an unknown type ID.
+     */
+    public static Object readObject(DataInput in) throws IOException
+    {
+        int id = readVarint(in);
+        if(id == ID_NULL) return null;
+        Entry[] ids = byId;
+        if(id < 0 || id >= ids.length || ids[id] == null) throw new IOException("No codec registered for type ID " + id + "!");
+        return ids[id].codec.decode(in);
+    }
+
+    /**
+     * Reads an unsigned varint, 7 bits per byte with the least significant group first.
+     * @param in The {@link java.io.DataInput} to read from.
+     * @return Returns the value that was read.
+     * @throws IOException Thrown if the data is truncated or the varint is too long.
+     */
+    public static int readVarint(DataInput in) throws IOException
+    {
+        int r = 0;
+        for(int shift = 0; shift < 35; shift += 7)
+        {
+            int b = in.readByte();
+            r |= (b & 0x7F) << shift;
+            if((b & 0x80) == 0) return r;
+        }
+        throw new IOException("Malformed varint!");
+    }
+
+    /**
+     * Registers a codec for a type, so that objects of exactly that type are converted by it instead of by Java serialization.
+     * Both ends of a connection must register the same codecs under the same type IDs.
+     * @param <T> The type of object converted by the codec.
+     * @param id The type ID written in front of the codec's data. Must be between {@link #FIRST_USER_ID} and {@link #MAX_ID}.
+     * @param type The type of object converted by the codec.
+     * @param codec The {@link wrath.net.PacketCodec} to register.
+     */
+    public static synchronized <T> void register(int id, Class<T> type, PacketCodec<T> codec)
+    {
+        if(id < FIRST_USER_ID || id > MAX_ID) throw new IllegalArgumentException("Codec type ID " + id + " is outside of [" + FIRST_USER_ID + ", " + MAX_ID + "]!");
+        Entry[] ids = byId;
+        if(id < ids.length && ids[id] != null) throw new IllegalArgumentException("Codec type ID " + id + " is already registered!");
+        if(BY_CLASS.containsKey(type)) throw new IllegalArgumentException("A codec is already registered for " + type.getName() + "!");
+
+        ids = Arrays.copyOf(ids, Math.max(ids.length, id + 1));
+        Entry e = new Entry(id, codec);
+        ids[id] = e;
+        byId = ids;
+        BY_CLASS.put(type, e);
+    }
+
+    /**
+     * Changes whether objects without a codec are converted with Java serialization.
+     * When turned off, converting such an object or reading Java serialized data fails.
+     * @param enabled If true, Java serialization is used as a fallback. Defaults to true.
+     */
+    public static void setJavaSerializationEnabled(boolean enabled)
+    {
+        javaSerialization = enabled;
+    }
+
+    /**
+     * Writes an object with its type ID, using the codec registered for its type.
+     * Meant to be used by {@link wrath.net.PacketCodec}s to write nested objects.
+     * @param object The object to write. May be null.
+     * @param out The {@link java.io.DataOutput} to write to.
+     * @throws IOException Thrown if the object has no codec and cannot be Java serialized.
+     */
+    @SuppressWarnings("unchecked")
+    public static void writeObject(Object object, DataOutput out) throws IOException
+    {
+        if(object == null)
+        {
+            writeVarint(ID_NULL, out);
+            return;
+        }
+
+        Entry e = BY_CLASS.get(object.getClass());
+        // Arrays such as Integer[] have no codec either, so they decode with their own component type rather than as Object[].
+        if(e == null) e = byId[ID_JAVA];
+        writeVarint(e.id, out);
+        ((PacketCodec<Object>) e.codec).encode(object, out);
+    }
+
+    /**
+     * Writes an unsigned varint, 7 bits per byte with the least significant group first.
+     * @param value The value to write.
+     * @param out The {@link java.io.DataOutput} to write to.
+     * @throws IOException Thrown if the value could not be written.
+     */
+    public static void writeVarint(int value, DataOutput out) throws IOException
+    {
+        while((value & ~0x7F) != 0)
+        {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Reads an object with Java serialization.
+     */
+    private static Object deserialize(byte[] data, int offset, int length) throws IOException
+    {
+        if(!javaSerialization) throw new IOException("Java serialization is disabled!");
+        try(ObjectInputStream conv = new ObjectInputStream(new ByteArrayInputStream(data, offset, length)))
+        {
+            return conv.readObject();
+        }
+        catch(ClassNotFoundException e)
+        {
+            throw new IOException("Unknown class in serialized data!", e);
+        }
+    }
+
+    /**
+     * Writes an object with Java serialization.
+     */
+    private static byte[] serialize(Object object) throws IOException
+    {
+        if(!(object instanceof Serializable)) throw new IOException("No codec registered for " + object.getClass().getName() + "!");
+        if(!javaSerialization) throw new IOException("No codec registered for " + object.getClass().getName() + ", and Java serialization is disabled!");
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try(ObjectOutputStream conv = new ObjectOutputStream(bos))
+        {
+            conv.writeObject(object);
+        }
+        return bos.toByteArray();
+    }
+
+    /**
+     * Class to hold a registered codec and its type ID.
+     */
+    private static class Entry
+    {
+        private final PacketCodec<?> codec;
+        private final int id;
+
+        private Entry(int id, PacketCodec<?> codec)
+        {
+            this.codec = codec;
+            this.id = id;
+        }
+    }
+
+    /**
+     * Unsynchronized {@link java.io.DataInput} reading from a {@link java.nio.ByteBuffer}.
+     */
+    private static class Input implements DataInput
+    {
+        private final ByteBuffer buf;
+
+        private Input(ByteBuffer buf)
+        {
+            this.buf = buf;
+        }
+
+        private void need(int n) throws EOFException
+        {
+            if(buf.remaining() < n) throw new EOFException("Data is truncated!");
+        }
+
+        @Override
+        public boolean readBoolean() throws IOException
+        {
+            return readByte() != 0;
+        }
+
+        @Override
+        public byte readByte() throws IOException
+        {
+            need(1);
+            return buf.get();
+        }
+
+        @Override
+        public char readChar() throws IOException
+        {
+            need(2);
+            return buf.getChar();
+        }
+
+        @Override
+        public double readDouble() throws IOException
+        {
+            need(8);
+            return buf.getDouble();
+        }
+
+        @Override
+        public float readFloat() throws IOException
+        {
+            need(4);
+            return buf.getFloat();
+        }
+
+        @Override
+        public void readFully(byte[] b) throws IOException
+        {
+            readFully(b, 0, b.length);
+        }
+
+        @Override
+        public void readFully(byte[] b, int off, int len) throws IOException
+        {
+            need(len);
+            buf.get(b, off, len);
+        }
+
+        @Override
+        public int readInt() throws IOException
+        {
+            need(4);
+            return buf.getInt();
+        }
+
+        @Override
+        public String readLine() throws IOException
+        {
+            if(!buf.hasRemaining()) return null;
+            StringBuilder r = new StringBuilder();
+            while(buf.hasRemaining())
+            {
+                int c = buf.get() & 0xFF;
+                if(c == '\n') break;
+                if(c == '\r')
+                {
+                    if(buf.hasRemaining() && buf.get(buf.position()) == '\n') buf.get();
+                    break;
+                }
+                r.append((char) c);
+            }
+            return r.toString();
+        }
+
+        @Override
+        public long readLong() throws IOException
+        {
+            need(8);
+            return buf.getLong();
+        }
+
+        @Override
+        public short readShort() throws IOException
+        {
+            need(2);
+            return buf.getShort();
+        }
+
+        @Override
+        public int readUnsignedByte() throws IOException
+        {
+            return readByte() & 0xFF;
+        }
+
+        @Override
+        public int readUnsignedShort() throws IOException
+        {
+            return readShort() & 0xFFFF;
+        }
+
+        @Override
+        public String readUTF() throws IOException
+        {
+            return DataInputStream.readUTF(this);
+        }
+
+        @Override
+        public int skipBytes(int n)
+        {
+            n = Math.max(0, Math.min(n, buf.remaining()));
+            buf.position(buf.position() + n);
+            return n;
+        }
+    }
+
+    /**
+     * Unsynchronized, growable {@link java.io.DataOutput} writing to a byte array.
+     */
+    private static class Output implements DataOutput
+    {
+        private byte[] buf = new byte[64];
+        private int count = 0;
+
+        private void ensure(int n)
+        {
+            if(count + n > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length << 1, count + n));
+        }
+
+        @Override
+        public void write(int b)
+        {
+            ensure(1);
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b)
+        {
+            write(b, 0, b.length);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+        {
+            ensure(len);
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        @Override
+        public void writeBoolean(boolean v)
+        {
+            write(v ? 1 : 0);
+        }
+
+        @Override
+        public void writeByte(int v)
+        {
+            write(v);
+        }
+
+        @Override
+        public void writeBytes(String s)
+        {
+            int len = s.length();
+            ensure(len);
+            for(int i = 0; i < len; i++) buf[count++] = (byte) s.charAt(i);
+        }
+
+        @Override
+        public void writeChar(int v)
+        {
+            writeShort(v);
+        }
+
+        @Override
+        public void writeChars(String s)
+        {
+            int len = s.length();
+            for(int i = 0; i < len; i++) writeChar(s.charAt(i));
+        }
+
+        @Override
+        public void writeDouble(double v)
+        {
+            writeLong(Double.doubleToLongBits(v));
+        }
+
+        @Override
+        public void writeFloat(float v)
+        {
+            writeInt(Float.floatToIntBits(v));
+        }
+
+        @Override
+        public void writeInt(int v)
+        {
+            ensure(4);
+            buf[count++] = (byte) (v >>> 24);
+            buf[count++] = (byte) (v >>> 16);
+            buf[count++] = (byte) (v >>> 8);
+            buf[count++] = (byte) v;
+        }
+
+        @Override
+        public void writeLong(long v)
+        {
+            writeInt((int) (v >>> 32));
+            writeInt((int) v);
+        }
+
+        @Override
+        public void writeShort(int v)
+        {
+            ensure(2);
+            buf[count++] = (byte) (v >>> 8);
+            buf[count++] = (byte) v;
+        }
+
+        @Override
+        public void writeUTF(String s) throws IOException
+        {
+            // Modified UTF-8, as written by java.io.DataOutputStream.
+            int start = count;
+            ensure(2);
+            count += 2;
+            int len = s.length();
+            for(int i = 0; i < len; i++)
+            {
+                char c = s.charAt(i);
+                if(c >= 0x0001 && c <= 0x007F) write(c);
+                else if(c > 0x07FF)
+                {
+                    write(0xE0 | ((c >> 12) & 0x0F));
+                    write(0x80 | ((c >> 6) & 0x3F));
+                    write(0x80 | (c & 0x3F));
+                }
+                else
+                {
+                    write(0xC0 | ((c >> 6) & 0x1F));
+                    write(0x80 | (c & 0x3F));
+                }
+            }
+            int utflen = count - start - 2;
+            if(utflen > 65535)
+            {
+                count = start;
+                throw new UTFDataFormatException("Encoded string too long: " + utflen + " bytes");
+            }
+            buf[start] = (byte) (utflen >>> 8);
+            buf[start + 1] = (byte) utflen;
+        }
+    }
+}
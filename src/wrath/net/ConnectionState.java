@@ -53,5 +53,9 @@ public enum ConnectionState
     /**
      * When a Server or UDP-based Client failed to bind its socket to a port.
      */
-    SOCKET_NOT_BOUND_ERROR;
+    SOCKET_NOT_BOUND_ERROR,
+    /**
+     * When a Client was disconnected by the Server because it sent nothing, not even a heartbeat, for longer than the "IdleTimeout".
+     */
+    DISCONNECTED_TIMED_OUT;
 }
@@ -0,0 +1,247 @@
+/**
+ * The MIT License (MIT)
+ * Wrath Net Engine Copyright (c) 2016 Trent Spears
+ */
+package wrath.net;
+
+/**
+ * Class to represent a snapshot of the traffic and processing statistics of a {@link wrath.net.Server}, {@link wrath.net.ServerClient} or {@link wrath.net.Client}.
+ * Byte and packet counts are of the data as it went over the network, after compression and encryption.
+ * A {@link wrath.net.ServerClient}'s snapshot only holds its own traffic and send failures; queue depth, drops and timings are only tracked for a whole Server.
+ * The values are read one after another while traffic goes on, so they may be a few packets apart from each other.
+ * @author Trent Spears
+ */
+public class Metrics
+{
+    private final long bytesReceived;
+    private final long bytesSent;
+    private final Latency decodeTime;
+    private final int inboundQueueDepth;
+    private final long packetsDropped;
+    private final long packetsReceived;
+    private final long packetsSent;
+    private final Latency receiveTime;
+    private final long sendFailures;
+
+    /**
+     * Constructor.
+     * @param bytesReceived The number of bytes received.
+     * @param bytesSent The number of bytes sent.
+     * @param packetsReceived The number of packets received.
+     * @param packetsSent The number of packets sent.
+     * @param packetsDropped The number of packets dropped because a queue was full or because they could not be decoded.
+     * @param sendFailures The number of times data could not be written to a socket.
+     * @param inboundQueueDepth The number of received events waiting to be processed.
+     * @param decodeTime The {@link wrath.net.Metrics.Latency} of decrypting and decompressing received packets.
+     * @param receiveTime The {@link wrath.net.Metrics.Latency} of the listener's onReceive() method.
+     */
+    public Metrics(long bytesReceived, long bytesSent, long packetsReceived, long packetsSent, long packetsDropped, long sendFailures, int inboundQueueDepth, Latency decodeTime, Latency receiveTime)
+    {
+        this.bytesReceived = bytesReceived;
+        this.bytesSent = bytesSent;
+        this.packetsReceived = packetsReceived;
+        this.packetsSent = packetsSent;
+        this.packetsDropped = packetsDropped;
+        this.sendFailures = sendFailures;
+        this.inboundQueueDepth = inboundQueueDepth;
+        this.decodeTime = decodeTime;
+        this.receiveTime = receiveTime;
+    }
+
+    /**
+     * Gets the number of bytes received.
+     * @return Returns the number of bytes received.
+     */
+    public long getBytesReceived()
+    {
+        return bytesReceived;
+    }
+
+    /**
+     * Gets the number of bytes sent. Data broadcast to several Clients counts once for each of them.
+     * @return Returns the number of bytes sent.
+     */
+    public long getBytesSent()
+    {
+        return bytesSent;
+    }
+
+    /**
+     * Gets how long decrypting and decompressing received packets took. Empty while neither is enabled.
+     * @return Returns the {@link wrath.net.Metrics.Latency} of decoding received packets.
+     */
+    public Latency getDecodeTime()
+    {
+        return decodeTime;
+    }
+
+    /**
+     * Gets the number of received events waiting to be processed when the snapshot was taken.
+     * @return Returns the depth of the inbound queues.
+     */
+    public int getInboundQueueDepth()
+    {
+        return inboundQueueDepth;
+    }
+
+    /**
+     * Gets the number of packets dropped because an inbound or outbound queue was full, or because they could not be decrypted or decompressed.
+     * @return Returns the number of dropped packets.
+     */
+    public long getPacketsDropped()
+    {
+        return packetsDropped;
+    }
+
+    /**
+     * Gets the number of packets received, not counting the ones used internally, such as acknowledgements.
+     * @return Returns the number of packets received.
+     */
+    public long getPacketsReceived()
+    {
+        return packetsReceived;
+    }
+
+    /**
+     * Gets the number of packets sent. Data broadcast to several Clients counts once for each of them.
+     * @return Returns the number of packets sent.
+     */
+    public long getPacketsSent()
+    {
+        return packetsSent;
+    }
+
+    /**
+     * Gets how long the listener's onReceive() method took.
+     * @return Returns the {@link wrath.net.Metrics.Latency} of onReceive().
+     */
+    public Latency getReceiveTime()
+    {
+        return receiveTime;
+    }
+
+    /**
+     * Gets the number of times data could not be written to a socket.
+     * @return Returns the number of send failures.
+     */
+    public long getSendFailures()
+    {
+        return sendFailures;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "[in=" + packetsReceived + "p/" + bytesReceived + "B, out=" + packetsSent + "p/" + bytesSent + "B, dropped=" + packetsDropped + ", sendFailures=" + sendFailures + ", queued=" + inboundQueueDepth + ", decode=" + decodeTime + ", onReceive=" + receiveTime + "]";
+    }
+
+    /**
+     * Class to represent a snapshot of a latency histogram. All times are in nanoseconds.
+     * Percentiles are accurate to within an eighth of their value.
+     */
+    public static class Latency
+    {
+        /**
+         * A histogram nothing was recorded in.
+         */
+        public static final Latency EMPTY = new Latency(0, 0, 0, 0, 0, 0, 0);
+
+        private final long count;
+        private final long max;
+        private final long mean;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+        private final long p999;
+
+        /**
+         * Constructor.
+         * @param count The number of recorded times.
+         * @param mean The mean time.
+         * @param p50 The median time.
+         * @param p90 The 90th percentile.
+         * @param p99 The 99th percentile.
+         * @param p999 The 99.9th percentile.
+         * @param max The longest time.
+         */
+        public Latency(long count, long mean, long p50, long p90, long p99, long p999, long max)
+        {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        /**
+         * Gets the number of recorded times.
+         * @return Returns the number of recorded times.
+         */
+        public long getCount()
+        {
+            return count;
+        }
+
+        /**
+         * Gets the longest recorded time.
+         * @return Returns the longest recorded time.
+         */
+        public long getMax()
+        {
+            return max;
+        }
+
+        /**
+         * Gets the mean of the recorded times.
+         * @return Returns the mean time.
+         */
+        public long getMean()
+        {
+            return mean;
+        }
+
+        /**
+         * Gets the median of the recorded times.
+         * @return Returns the median time.
+         */
+        public long getP50()
+        {
+            return p50;
+        }
+
+        /**
+         * Gets the 90th percentile of the recorded times.
+         * @return Returns the 90th percentile.
+         */
+        public long getP90()
+        {
+            return p90;
+        }
+
+        /**
+         * Gets the 99th percentile of the recorded times.
+         * @return Returns the 99th percentile.
+         */
+        public long getP99()
+        {
+            return p99;
+        }
+
+        /**
+         * Gets the 99.9th percentile of the recorded times.
+         * @return Returns the 99.9th percentile.
+         */
+        public long getP999()
+        {
+            return p999;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "[n=" + count + " mean=" + mean + "ns p50=" + p50 + "ns p99=" + p99 + "ns max=" + max + "ns]";
+        }
+    }
+}
@@ -4,27 +4,31 @@
  */
 package wrath.net;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
 /**
  * Class used to transport and convert raw byte data to other kinds of data.
  * Also works vise-versa.
+ * Objects are converted by the {@link wrath.net.CodecRegistry}, falling back to Java serialization for types without a {@link wrath.net.PacketCodec}.
+ * The data is held as a {@link java.nio.ByteBuffer} view, which may be backed by a byte array, a {@link wrath.net.PooledBuffer} or direct memory.
+ * All indexes are relative to the start of the Packet's data.
  * @author Trent Spears
  */
 public class Packet
 {
+    public static final byte[] HEARTBEAT = ((char) 0 + "beat" + (char) 0).getBytes(Charset.forName("UTF-8"));
     public static final byte[] RUDP_REQ = ((char) 0 + "rudp" + (char) 0).getBytes(Charset.forName("UTF-8"));
     public static final byte[] TERMINATION_CALL = ((char) 0 + "bye" + (char) 0).getBytes(Charset.forName("UTF-8"));
     
-    private byte[] data = new byte[0];
+    private final ByteBuffer buf;
+    private PooledBuffer buffer = null;
+    private boolean pooledView = false;
     private transient Object dataAsObj = null;
     private transient Object[] dataAsArr = null;
+    private byte[] trimmed = null;
     
     /**
      * Constructor.
@@ -33,7 +37,29 @@ public class Packet
      */
     public Packet(byte[] data)
     {
-        this.data = data;
+        this.buf = ByteBuffer.wrap(data);
+    }
+    
+    /**
+     * Constructor.
+     * The packet becomes a view of the buffer's remaining bytes; no data is copied.
+     * @param buffer The {@link java.nio.ByteBuffer} holding the raw data between its position and limit. May be a direct buffer.
+     */
+    public Packet(ByteBuffer buffer)
+    {
+        this.buf = buffer.slice();
+    }
+    
+    /**
+     * Constructor.
+     * The packet takes over the caller's reference to the buffer, which is released by {@link #release()}.
+     * @param buffer The {@link wrath.net.PooledBuffer} holding the raw data.
+     * @param length The number of bytes of data in the buffer.
+     */
+    public Packet(PooledBuffer buffer, int length)
+    {
+        this.buffer = buffer;
+        this.buf = ByteBuffer.wrap(buffer.array(), 0, length);
     }
     
     /**
@@ -42,19 +68,7 @@ public class Packet
      */
     public Packet(Serializable object)
     {
-        try
-        {
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            ObjectOutputStream conv = new ObjectOutputStream(bos);
-            conv.writeObject(object);
-            conv.close();
-            bos.close();
-            data = bos.toByteArray();
-        }
-        catch(IOException e)
-        {
-            System.err.println("] ERROR: Could not convert object data to bytes, I/O ERROR!");
-        }
+        this.buf = encode(object);
     }
     
     /**
@@ -65,19 +79,41 @@ public class Packet
      */
     public Packet(Serializable[] objects)
     {
-        try
-        {
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            ObjectOutputStream conv = new ObjectOutputStream(bos);
-            conv.writeObject(objects);
-            conv.close();
-            bos.close();
-            data = bos.toByteArray();
-        }
-        catch(IOException e)
-        {
-            System.err.println("] ERROR: Could not convert object data to bytes, I/O ERROR!");
-        }
+        this.buf = encode(objects);
+    }
+    
+    /**
+     * Checks if the Packet's data is equal to the specified bytes, without copying it.
+     * @param other The bytes to compare against.
+     * @return Returns true if the Packet holds exactly the specified bytes. Otherwise false.
+     */
+    public boolean dataEquals(byte[] other)
+    {
+        int length = buf.limit();
+        if(other.length != length) return false;
+        for(int i = 0; i < length; i++)
+            if(buf.get(i) != other[i]) return false;
+        return true;
+    }
+    
+    /**
+     * Gets a view of the Packet's data, from position 0 to the Packet's length.
+     * The view shares its content with the Packet, but has its own position and limit.
+     * @return Returns a {@link java.nio.ByteBuffer} view of the Packet's data.
+     */
+    public ByteBuffer getBuffer()
+    {
+        return buf.duplicate();
+    }
+    
+    /**
+     * Gets the byte at the specified index.
+     * @param index The index to read from.
+     * @return Returns the byte at the specified index.
+     */
+    public byte getByte(int index)
+    {
+        return buf.get(index);
     }
     
     /**
@@ -96,21 +132,14 @@ public class Packet
         
         try
         {
-            ObjectInputStream conv = new ObjectInputStream(new ByteArrayInputStream(data));
-            Object r = conv.readObject();
-            conv.close();
+            Object r = CodecRegistry.decode(buf);
             this.dataAsObj = r;
             this.dataAsArr = new Object[]{r};
             return r;
         }
-        catch(ClassNotFoundException e)
-        {
-            System.err.println("] ERROR: Could not read packet data as an Object, Unknown or corrupted data!");
-            this.dataAsObj = null;
-        }
         catch(IOException e)
         {
-            System.err.println("] ERROR: Could not read packet data as an Object, I/O ERROR!");
+            System.err.println("] ERROR: Could not read packet data as an Object, Unknown or corrupted data! " + e.getMessage());
             this.dataAsObj = null;
         }
         
@@ -125,12 +154,10 @@ public class Packet
     {
         if(dataAsArr != null) return dataAsArr;
         if(dataAsObj != null) return (Object[]) dataAsObj;
-            
+        
         try
         {
-            ObjectInputStream conv = new ObjectInputStream(new ByteArrayInputStream(data));
-            Object r = conv.readObject();
-            conv.close();
+            Object r = CodecRegistry.decode(buf);
             Object[] ra;
             if(r instanceof Object[]) ra = (Object[]) r;
             else ra = new Object[]{r};
@@ -138,24 +165,249 @@ public class Packet
             this.dataAsObj = r;
             return ra;
         }
-        catch(ClassNotFoundException e)
-        {
-            System.err.println("] ERROR: Could not read packet data as an Object, Unknown or corrupted data!");
-        }
         catch(IOException e)
         {
-            System.err.println("] ERROR: Could not read packet data as an Object, I/O ERROR!");
+            System.err.println("] ERROR: Could not read packet data as an Object, Unknown or corrupted data! " + e.getMessage());
         }
         
         return null;
     }
     
+    /**
+     * Gets the double at the specified index.
+     * @param index The index to read from.
+     * @return Returns the double at the specified index.
+     */
+    public double getDouble(int index)
+    {
+        return buf.getDouble(index);
+    }
+    
+    /**
+     * Gets the float at the specified index.
+     * @param index The index to read from.
+     * @return Returns the float at the specified index.
+     */
+    public float getFloat(int index)
+    {
+        return buf.getFloat(index);
+    }
+    
+    /**
+     * Gets the int at the specified index.
+     * @param index The index to read from.
+     * @return Returns the int at the specified index.
+     */
+    public int getInt(int index)
+    {
+        return buf.getInt(index);
+    }
+    
+    /**
+     * Gets the number of bytes of data contained in the packet.
+     * @return Returns the number of bytes of data contained in the packet.
+     */
+    public int getLength()
+    {
+        return buf.limit();
+    }
+    
+    /**
+     * Gets the long at the specified index.
+     * @param index The index to read from.
+     * @return Returns the long at the specified index.
+     */
+    public long getLong(int index)
+    {
+        return buf.getLong(index);
+    }
+    
     /**
      * Gets the raw byte data contained in the packet.
+     * If the packet is a view of part of an array, or of direct memory, the data is copied out into a new array the first time this is called.
+     * Data held in a {@link wrath.net.PooledBuffer} is always copied out, since its array is re-used once the packet is released.
      * @return Returns the raw byte data contained in the packet.
      */
     public byte[] getRawData()
     {
-        return data;
+        if(buffer == null && !pooledView && buf.hasArray() && buf.arrayOffset() == 0 && buf.array().length == buf.limit()) return buf.array();
+        if(trimmed == null)
+        {
+            trimmed = new byte[buf.limit()];
+            buf.duplicate().get(trimmed);
+        }
+        return trimmed;
+    }
+    
+    /**
+     * Gets the short at the specified index.
+     * @param index The index to read from.
+     * @return Returns the short at the specified index.
+     */
+    public short getShort(int index)
+    {
+        return buf.getShort(index);
+    }
+    
+    /**
+     * Checks if the packet's data lives in direct (off-heap) memory.
+     * @return Returns true if the packet's data lives in direct memory. Otherwise false.
+     */
+    public boolean isDirect()
+    {
+        return buf.isDirect();
+    }
+    
+    /**
+     * Checks if the packet is backed by a {@link wrath.net.PooledBuffer}.
+     * @return Returns true if the packet is backed by a {@link wrath.net.PooledBuffer}. Otherwise false.
+     */
+    public boolean isPooled()
+    {
+        return buffer != null;
+    }
+    
+    /**
+     * Writes a byte at the specified index.
+     * @param index The index to write to.
+     * @param value The value to write.
+     * @return Returns this packet.
+     */
+    public Packet putByte(int index, byte value)
+    {
+        buf.put(index, value);
+        invalidate();
+        return this;
+    }
+    
+    /**
+     * Writes a double at the specified index.
+     * @param index The index to write to.
+     * @param value The value to write.
+     * @return Returns this packet.
+     */
+    public Packet putDouble(int index, double value)
+    {
+        buf.putDouble(index, value);
+        invalidate();
+        return this;
+    }
+    
+    /**
+     * Writes a float at the specified index.
+     * @param index The index to write to.
+     * @param value The value to write.
+     * @return Returns this packet.
+     */
+    public Packet putFloat(int index, float value)
+    {
+        buf.putFloat(index, value);
+        invalidate();
+        return this;
+    }
+    
+    /**
+     * Writes an int at the specified index.
+     * @param index The index to write to.
+     * @param value The value to write.
+     * @return Returns this packet.
+     */
+    public Packet putInt(int index, int value)
+    {
+        buf.putInt(index, value);
+        invalidate();
+        return this;
+    }
+    
+    /**
+     * Writes a long at the specified index.
+     * @param index The index to write to.
+     * @param value The value to write.
+     * @return Returns this packet.
+     */
+    public Packet putLong(int index, long value)
+    {
+        buf.putLong(index, value);
+        invalidate();
+        return this;
+    }
+    
+    /**
+     * Writes a short at the specified index.
+     * @param index The index to write to.
+     * @param value The value to write.
+     * @return Returns this packet.
+     */
+    public Packet putShort(int index, short value)
+    {
+        buf.putShort(index, value);
+        invalidate();
+        return this;
+    }
+    
+    /**
+     * Releases the packet's reference to its {@link wrath.net.PooledBuffer}, if it has one.
+     * Received packets are released automatically once onReceive() returns; only call this to match a call to {@link #retain()}.
+     */
+    public void release()
+    {
+        if(buffer != null) buffer.release();
+    }
+    
+    /**
+     * Keeps the packet's {@link wrath.net.PooledBuffer} from being re-used after onReceive() returns.
+     * Listeners that hold on to a received packet must call this, and call {@link #release()} once they are done with it.
+     * @return Returns this packet.
+     */
+    public Packet retain()
+    {
+        if(buffer != null) buffer.retain();
+        return this;
+    }
+    
+    /**
+     * Creates a Packet that is a view of part of this Packet's data. No data is copied.
+     * The view does not hold its own reference to a {@link wrath.net.PooledBuffer}, so it is only valid for as long as this Packet is.
+     * @param offset The index in this Packet where the view starts.
+     * @param length The number of bytes in the view.
+     * @return Returns a Packet that is a view of part of this Packet's data.
+     */
+    public Packet slice(int offset, int length)
+    {
+        if(offset < 0 || length < 0 || offset + length > buf.limit()) throw new IndexOutOfBoundsException("Slice [" + offset + ", " + (offset + length) + ") is outside of a Packet of length " + buf.limit() + "!");
+        ByteBuffer view = buf.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        Packet p = new Packet(view);
+        p.pooledView = buffer != null || pooledView;
+        return p;
+    }
+    
+    /**
+     * Drops the cached copies of the data after it has been written to.
+     */
+    private void invalidate()
+    {
+        trimmed = null;
+        dataAsObj = null;
+        dataAsArr = null;
+    }
+    
+    /**
+     * Converts an object to bytes with the {@link wrath.net.CodecRegistry}.
+     * @param object The object to convert.
+     * @return Returns the converted bytes, or an empty buffer if the object could not be converted.
+     */
+    private static ByteBuffer encode(Object object)
+    {
+        try
+        {
+            return CodecRegistry.encode(object);
+        }
+        catch(IOException e)
+        {
+            System.err.println("] ERROR: Could not convert object data to bytes! " + e.getMessage());
+            return ByteBuffer.allocate(0);
+        }
     }
 }
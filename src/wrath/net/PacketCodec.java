@@ -0,0 +1,35 @@
+/**
+ * The MIT License (MIT)
+ * Wrath Net Engine Copyright (c) 2016 Trent Spears
+ */
+package wrath.net;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Interface to allow developer to convert their own types to and from Packet data, without Java serialization.
+ * Codecs are registered with a type ID in the {@link wrath.net.CodecRegistry}; both ends of a connection must register the same codecs under the same IDs.
+ * Objects nested inside a type can be written with {@link wrath.net.CodecRegistry#writeObject(java.lang.Object, java.io.DataOutput)}.
+ * @param <T> The type of object converted by the codec.
+ * @author Trent Spears
+ */
+public interface PacketCodec<T>
+{
+    /**
+     * Reads an object written by {@link #encode(java.lang.Object, java.io.DataOutput)}.
+     * @param in The {@link java.io.DataInput} to read the object from.
+     * @return Returns the object that was read.
+     * @throws IOException Thrown if the data is truncated or corrupted.
+     */
+    public T decode(DataInput in) throws IOException;
+
+    /**
+     * Writes an object in the codec's binary format.
+     * @param value The object to write. Never null.
+     * @param out The {@link java.io.DataOutput} to write the object to.
+     * @throws IOException Thrown if the object could not be written.
+     */
+    public void encode(T value, DataOutput out) throws IOException;
+}
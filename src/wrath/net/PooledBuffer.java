@@ -0,0 +1,99 @@
+/**
+ * The MIT License (MIT)
+ * Wrath Net Engine Copyright (c) 2016 Trent Spears
+ */
+package wrath.net;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Class to represent a reference-counted byte array borrowed from the {@link wrath.net.BufferPool}.
+ * A buffer starts with one reference. Every {@link #retain()} must be matched by a {@link #release()}, and the array goes back to the pool when the last reference is released.
+ * The array may be longer than the data stored in it.
+ * @author Trent Spears
+ */
+public class PooledBuffer
+{
+    private static final AtomicIntegerFieldUpdater<PooledBuffer> REFS = AtomicIntegerFieldUpdater.newUpdater(PooledBuffer.class, "refs");
+
+    private final byte[] array;
+    private volatile int refs = 0;
+    final int sizeClass;
+
+    /**
+     * Constructor.
+     * @param array The byte array to hold.
+     * @param sizeClass The {@link wrath.net.BufferPool} size class the array belongs to, or -1 if it is not pooled.
+     */
+    PooledBuffer(byte[] array, int sizeClass)
+    {
+        this.array = array;
+        this.sizeClass = sizeClass;
+    }
+
+    /**
+     * Gets the backing byte array. Only valid while a reference is held.
+     * @return Returns the backing byte array.
+     */
+    public byte[] array()
+    {
+        return array;
+    }
+
+    /**
+     * Gets the size of the backing byte array.
+     * @return Returns the size of the backing byte array.
+     */
+    public int capacity()
+    {
+        return array.length;
+    }
+
+    /**
+     * Gets the number of references currently held on this buffer.
+     * @return Returns the number of references currently held on this buffer.
+     */
+    public int refCount()
+    {
+        return refs;
+    }
+
+    /**
+     * Releases one reference. When the last reference is released, the buffer is given back to the {@link wrath.net.BufferPool}.
+     * @return Returns true if this was the last reference. Otherwise false.
+     */
+    public boolean release()
+    {
+        int r = REFS.decrementAndGet(this);
+        if(r > 0) return false;
+        if(r < 0)
+        {
+            REFS.incrementAndGet(this);
+            throw new IllegalStateException("PooledBuffer released more times than it was retained!");
+        }
+        BufferPool.recycle(this);
+        return true;
+    }
+
+    /**
+     * Adds one reference, keeping the buffer out of the pool until it is released again.
+     * @return Returns this buffer.
+     */
+    public PooledBuffer retain()
+    {
+        if(REFS.getAndIncrement(this) <= 0)
+        {
+            REFS.decrementAndGet(this);
+            throw new IllegalStateException("PooledBuffer retained after it was released!");
+        }
+        return this;
+    }
+
+    /**
+     * Resets the reference count when the buffer is handed out by the pool.
+     */
+    void reset()
+    {
+        refs = 1;
+    }
+}
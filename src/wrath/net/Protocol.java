@@ -17,10 +17,12 @@ public enum Protocol
      */
     TCP,
     /**
-     * Reliable User Datagram Protocol (UNDER CONSTRUCTION, DEFUNCT).
-     * Built off of, and backwards compatible with, User Datagram Protocol.
-     * Same as UDP, but ensures that received packets are in order.
+     * Reliable User Datagram Protocol.
+     * Built off of User Datagram Protocol, but every packet is acknowledged and lost packets are sent again.
+     * Duplicates are dropped, and received packets are delivered in order unless the "RudpOrdered" config option is false.
+     * Both ends of the connection must use RUDP.
      * @see wrath.net.Protocol#UDP
+     * @see wrath.net.managers.RudpSession
      */
     RUDP,
     /**
@@ -9,9 +9,11 @@ import java.io.Serializable;
 import java.util.Collection;
 import javax.crypto.spec.SecretKeySpec;
 import wrath.net.managers.ServerManager;
+import wrath.net.managers.ServerNioTcpManager;
 import wrath.net.managers.ServerRudpManager;
 import wrath.net.managers.ServerTcpManager;
 import wrath.net.managers.ServerUdpManager;
+import wrath.net.managers.WaitStrategy;
 import wrath.util.Compression;
 import wrath.util.Config;
 
@@ -30,6 +32,7 @@ public class Server
     
     /**
      * Constructor.
+     * If the Server config option "TcpNonBlocking" is true, TCP connections are served by the {@link wrath.net.managers.ServerNioTcpManager}.
      * @param protocol The {@link wrath.net.Protocol} the server should use for communications.
      * @param listener The {@link wrath.net.ServerListener} to report received data to.
      */
@@ -38,7 +41,8 @@ public class Server
         this.proto = protocol;
         this.listener = listener;
         
-        if(proto == Protocol.TCP) man = new ServerTcpManager(this);
+        if(proto == Protocol.TCP && SERVER_CFG.getBoolean("TcpNonBlocking", false)) man = new ServerNioTcpManager(this);
+        else if(proto == Protocol.TCP) man = new ServerTcpManager(this);
         else if(proto == Protocol.UDP) man = new ServerUdpManager(this);
         else man = new ServerRudpManager(this);
     }
@@ -82,6 +86,71 @@ public class Server
         man.disableDataEncryption();
     }
     
+    /**
+     * Sends data to every connected {@link wrath.net.ServerClient}.
+     * @see wrath.net.managers.ServerManager#broadcast(byte[]) 
+     * @param data The data to send to the Clients.
+     */
+    public void broadcast(byte[] data)
+    {
+        man.broadcast(data);
+    }
+    
+    /**
+     * Sends data to every connected {@link wrath.net.ServerClient}.
+     * @see wrath.net.managers.ServerManager#broadcast(java.io.Serializable) 
+     * @param object The object to send to the Clients.
+     */
+    public void broadcast(Serializable object)
+    {
+        man.broadcast(object);
+    }
+    
+    /**
+     * Sends data to every connected {@link wrath.net.ServerClient}.
+     * The data is serialized, compressed and encrypted only once, no matter how many Clients are connected.
+     * @see wrath.net.managers.ServerManager#broadcast(wrath.net.Packet) 
+     * @param packet The {@link wrath.net.Packet} containing the data to send to the Clients.
+     */
+    public void broadcast(Packet packet)
+    {
+        man.broadcast(packet);
+    }
+    
+    /**
+     * Sends data to each of the specified {@link wrath.net.ServerClient}s that is connected.
+     * @see wrath.net.managers.ServerManager#broadcast(java.util.Collection, byte[]) 
+     * @param recipients The {@link wrath.net.ServerClient}s to send data to.
+     * @param data The data to send to the Clients.
+     */
+    public void broadcast(Collection<ServerClient> recipients, byte[] data)
+    {
+        man.broadcast(recipients, data);
+    }
+    
+    /**
+     * Sends data to each of the specified {@link wrath.net.ServerClient}s that is connected.
+     * @see wrath.net.managers.ServerManager#broadcast(java.util.Collection, java.io.Serializable) 
+     * @param recipients The {@link wrath.net.ServerClient}s to send data to.
+     * @param object The object to send to the Clients.
+     */
+    public void broadcast(Collection<ServerClient> recipients, Serializable object)
+    {
+        man.broadcast(recipients, object);
+    }
+    
+    /**
+     * Sends data to each of the specified {@link wrath.net.ServerClient}s that is connected.
+     * The data is serialized, compressed and encrypted only once, no matter how many Clients it is sent to.
+     * @see wrath.net.managers.ServerManager#broadcast(java.util.Collection, wrath.net.Packet) 
+     * @param recipients The {@link wrath.net.ServerClient}s to send data to.
+     * @param packet The {@link wrath.net.Packet} containing the data to send to the Clients.
+     */
+    public void broadcast(Collection<ServerClient> recipients, Packet packet)
+    {
+        man.broadcast(recipients, packet);
+    }
+    
     /**
      * Disconnects a client from the Server.
      * @see wrath.net.managers.ServerManager#disconnectClient(wrath.net.ServerClient) 
@@ -94,7 +163,7 @@ public class Server
     
     /**
      * Enables data being sent and received to be compressed and decompressed in specified format.
-     * WARNING: This should only be enabled when sending large amounts of data.
+     * Packets smaller than the "CompressionThreshold" config option (default 128 bytes), or that would not get smaller, are sent uncompressed.
      * @param format The format to compress the data with.
      */
     public void enableDataCompression(Compression.CompressionType format)
@@ -104,6 +173,7 @@ public class Server
     
     /**
      * Enables all data going through this Server->Client connection to be encrypted/decrypted with the specified phrase/key.
+     * Data is encrypted with AES-GCM, so packets that were tampered with are dropped. The key must be a 128, 192 or 256 bit AES key.
      * @param key The Key generated from {@link wrath.util.Encryption#generateKey(java.lang.String, java.lang.String) }.
      * WARNING: The Client and Server must both have encryption enabled with the same key.
      * WARNING: Encrypting data will slightly increase the size of the data transmitted and received.
@@ -114,6 +184,25 @@ public class Server
         man.enableDataEncryption(key);
     }
     
+    /**
+     * Writes any data held back by the {@link wrath.net.managers.FlushPolicy} to the sockets of all connected Clients.
+     * @see wrath.net.managers.ServerManager#flush() 
+     */
+    public void flush()
+    {
+        man.flush();
+    }
+    
+    /**
+     * Writes any data held back by the {@link wrath.net.managers.FlushPolicy} to the specified Client's socket.
+     * @see wrath.net.managers.ServerManager#flush(wrath.net.ServerClient) 
+     * @param client The {@link wrath.net.ServerClient} to flush.
+     */
+    public void flush(ServerClient client)
+    {
+        man.flush(client);
+    }
+    
     /**
      * Gets the list of {@link wrath.net.ServerClient}s connected to this Server.
      * @see wrath.net.managers.ServerManager#getClients() 
@@ -145,6 +234,17 @@ public class Server
         return man.getIP();
     }
     
+    /**
+     * Gets a snapshot of the Server's traffic over all Clients, drops, inbound queue depth, and decode and onReceive() times.
+     * Statistics of a single Client are available from {@link wrath.net.ServerClient#getMetrics()}.
+     * @see wrath.net.managers.ServerManager#getMetrics() 
+     * @return Returns a {@link wrath.net.Metrics} snapshot of the Server's statistics.
+     */
+    public Metrics getMetrics()
+    {
+        return man.getMetrics();
+    }
+    
     /**
      * Gets the number of {@link wrath.net.ServerClient}s connected to the Server.
      * @see java.util.Collection#size() 
@@ -256,6 +356,16 @@ public class Server
         this.listener = listener;
     }
     
+    /**
+     * Changes what the Server's execution thread does while there are no events to process, trading latency for CPU usage.
+     * @see wrath.net.managers.ServerManager#setWaitStrategy(wrath.net.managers.WaitStrategy) 
+     * @param strategy The {@link wrath.net.managers.WaitStrategy} to use.
+     */
+    public void setWaitStrategy(WaitStrategy strategy)
+    {
+        man.setWaitStrategy(strategy);
+    }
+    
     /**
      * Unbinds the Server socket from the previously specified port.
      * @see wrath.net.managers.ServerManager#unbindSocket() 
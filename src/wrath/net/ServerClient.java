@@ -6,6 +6,7 @@ package wrath.net;
 
 import java.io.Serializable;
 import java.net.InetAddress;
+import wrath.net.managers.MetricsRecorder;
 
 /**
  * Class to represent a Client that is connected to a Server.
@@ -16,8 +17,11 @@ public class ServerClient
     private final InetAddress addr;
     private String ident = "";
     private final long joinTime = System.nanoTime();
+    private volatile long lastReceiveTime = joinTime;
+    private final MetricsRecorder metrics = new MetricsRecorder(false);
     private final int port;
     private final Server server;
+    private volatile ConnectionState state = ConnectionState.CONNECTED;
     
     /**
      * Constructor.
@@ -54,6 +58,14 @@ public class ServerClient
         server.disconnectClient(this);
     }
     
+    /**
+     * Writes any data held back by the {@link wrath.net.managers.FlushPolicy} to this Client's socket.
+     */
+    public void flush()
+    {
+        server.flush(this);
+    }
+    
     /**
      * Gets the {@link java.net.InetAddress} object linked with this Client, containing the Client's IP Address.
      * @return Returns the {@link java.net.InetAddress} object linked with this Client, containing the Client's IP Address.
@@ -63,6 +75,16 @@ public class ServerClient
         return addr;
     }
     
+    /**
+     * Gets the state of the Client's connection.
+     * While connected this is {@link wrath.net.ConnectionState#CONNECTED}. Once disconnected, it tells why, for example {@link wrath.net.ConnectionState#DISCONNECTED_TIMED_OUT}; it is already set when onClientDisconnect() is called.
+     * @return Returns the {@link wrath.net.ConnectionState} of the Client.
+     */
+    public ConnectionState getConnectionState()
+    {
+        return state;
+    }
+    
     /**
      * Gets the {@link java.lang.String} identifier for the Client. Typically "[IP:PORT]".
      * @return Returns the {@link java.lang.String} identifier for the Client.
@@ -81,6 +103,34 @@ public class ServerClient
         return joinTime;
     }
     
+    /**
+     * Gets when data was last received from the Client, heartbeats included, on the scale of {@link java.lang.System#nanoTime()}.
+     * Only kept up to date while the Server has an "IdleTimeout", and then only to within one tick of its timer.
+     * @return Returns when data was last received from the Client.
+     */
+    public long getLastReceiveTime()
+    {
+        return lastReceiveTime;
+    }
+    
+    /**
+     * Gets a snapshot of the Client's traffic: the bytes and packets sent to and received from it, and the number of failed sends.
+     * @return Returns a {@link wrath.net.Metrics} snapshot of the Client's traffic.
+     */
+    public Metrics getMetrics()
+    {
+        return metrics.snapshot(0, 0);
+    }
+    
+    /**
+     * Gets the live counters behind {@link #getMetrics()}. Updated by the {@link wrath.net.managers.ServerManager}.
+     * @return Returns the {@link wrath.net.managers.MetricsRecorder} of the Client.
+     */
+    public MetricsRecorder getMetricsRecorder()
+    {
+        return metrics;
+    }
+    
     /**
      * Gets the port this client is connected to.
      * @return Returns the port this client is connected to represented by an integer.
@@ -144,6 +194,24 @@ public class ServerClient
         this.ident = identifier;
     }
     
+    /**
+     * Changes the state of the Client's connection. Called by the {@link wrath.net.managers.ServerManager} when the Client disconnects.
+     * @param state The new {@link wrath.net.ConnectionState} of the Client.
+     */
+    public void setConnectionState(ConnectionState state)
+    {
+        this.state = state;
+    }
+    
+    /**
+     * Records when data was last received from the Client. Called by the {@link wrath.net.managers.ServerManager}.
+     * @param time The time data was received, on the scale of {@link java.lang.System#nanoTime()}.
+     */
+    public void setLastReceiveTime(long time)
+    {
+        this.lastReceiveTime = time;
+    }
+    
     @Override
     public String toString()
     {
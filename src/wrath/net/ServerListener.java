@@ -24,6 +24,7 @@ public interface ServerListener
     
     /**
      * Called when data is received from a Client to the Server.
+     * The packet may be backed by a pooled buffer that is re-used once this method returns. Call {@link wrath.net.Packet#retain()} to keep it longer.
      * @param client The {@link wrath.net.ServerClient} that the data originated from.
      * @param packet The {@link wrath.net.Packet} received from the Client.
      */
@@ -0,0 +1,244 @@
+/**
+ * The MIT License (MIT)
+ * Wrath Net Engine Copyright (c) 2016 Trent Spears
+ */
+package wrath.net.managers;
+
+import java.net.InetAddress;
+import java.util.concurrent.locks.StampedLock;
+import wrath.net.ServerClient;
+
+/**
+ * Class to look up connectionless {@link wrath.net.ServerClient}s by the address and port their datagrams come from.
+ * The table is an open-addressing hash table indexed by the address' hash code (the raw address for IPv4) and the port, and each hit is checked against the Client's address and port.
+ * Lookups neither allocate nor lock in the common case; they read optimistically and only take the read lock if a writer got in the way.
+ * @author Trent Spears
+ */
+public class AddressTable
+{
+    private final StampedLock lock = new StampedLock();
+    private volatile Table table = new Table(16);
+    private int size = 0;
+    
+    /**
+     * Removes every Client from the table.
+     */
+    public void clear()
+    {
+        long stamp = lock.writeLock();
+        try
+        {
+            table = new Table(16);
+            size = 0;
+        }
+        finally
+        {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * Looks for a Client in a table. Safe to call without the lock, as long as the result is validated afterwards.
+     */
+    private static ServerClient find(Table t, int hash, InetAddress address, int port)
+    {
+        int mask = t.clients.length - 1;
+        for(int i = hash & mask, n = 0; n <= mask; i = (i + 1) & mask, n++)
+        {
+            ServerClient c = t.clients[i];
+            if(c == null) return null;
+            if(t.hashes[i] == hash && c.getPort() == port && address.equals(c.getAddress())) return c;
+        }
+        return null;
+    }
+    
+    /**
+     * Gets the Client connected from the specified address and port.
+     * @param address The {@link java.net.InetAddress} the Client is connecting from.
+     * @param port The port the Client is connecting from.
+     * @return Returns the {@link wrath.net.ServerClient}, or null if there is none.
+     */
+    public ServerClient get(InetAddress address, int port)
+    {
+        int h = hash(address, port);
+        long stamp = lock.tryOptimisticRead();
+        if(stamp != 0L)
+        {
+            ServerClient c = find(table, h, address, port);
+            if(lock.validate(stamp)) return c;
+        }
+        
+        stamp = lock.readLock();
+        try
+        {
+            return find(table, h, address, port);
+        }
+        finally
+        {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    /**
+     * Mixes the address and port into the hash used to index the table.
+     */
+    private static int hash(InetAddress address, int port)
+    {
+        int h = address.hashCode() * 0x9E3779B9 + port;
+        return h ^ (h >>> 16);
+    }
+    
+    /**
+     * Adds a Client to the table, replacing any Client previously connected from the same address and port.
+     * @param client The {@link wrath.net.ServerClient} to add.
+     */
+    public void put(ServerClient client)
+    {
+        int h = hash(client.getAddress(), client.getPort());
+        long stamp = lock.writeLock();
+        try
+        {
+            Table t = table;
+            if((size + 1) * 2 > t.clients.length) table = t = resize(t);
+            int mask = t.clients.length - 1;
+            int i = h & mask;
+            while(t.clients[i] != null)
+            {
+                ServerClient c = t.clients[i];
+                if(t.hashes[i] == h && c.getPort() == client.getPort() && client.getAddress().equals(c.getAddress())) break;
+                i = (i + 1) & mask;
+            }
+            if(t.clients[i] == null) size++;
+            t.hashes[i] = h;
+            t.clients[i] = client;
+        }
+        finally
+        {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * Adds a Client to the table, unless a Client is already connected from the same address and port.
+     * Lets several receive threads race to connect the same sender, with exactly one of them winning.
+     * @param client The {@link wrath.net.ServerClient} to add.
+     * @return Returns the Client that was already in the table, or null if the specified Client was added.
+     */
+    public ServerClient putIfAbsent(ServerClient client)
+    {
+        int h = hash(client.getAddress(), client.getPort());
+        long stamp = lock.writeLock();
+        try
+        {
+            Table t = table;
+            ServerClient c = find(t, h, client.getAddress(), client.getPort());
+            if(c != null) return c;
+            if((size + 1) * 2 > t.clients.length) table = t = resize(t);
+            int mask = t.clients.length - 1;
+            int i = h & mask;
+            while(t.clients[i] != null) i = (i + 1) & mask;
+            size++;
+            t.hashes[i] = h;
+            t.clients[i] = client;
+            return null;
+        }
+        finally
+        {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * Removes a Client from the table.
+     * @param client The {@link wrath.net.ServerClient} to remove.
+     * @return Returns true if the Client was in the table. Otherwise false.
+     */
+    public boolean remove(ServerClient client)
+    {
+        int h = hash(client.getAddress(), client.getPort());
+        long stamp = lock.writeLock();
+        try
+        {
+            Table t = table;
+            int mask = t.clients.length - 1;
+            int i = h & mask;
+            while(t.clients[i] != client)
+            {
+                if(t.clients[i] == null) return false;
+                i = (i + 1) & mask;
+            }
+            
+            // Shift later entries of the same probe run back, so no lookup ever stops at the hole too early.
+            int j = i;
+            while(true)
+            {
+                j = (j + 1) & mask;
+                if(t.clients[j] == null) break;
+                int home = t.hashes[j] & mask;
+                if(i <= j ? (home <= i || home > j) : (home <= i && home > j))
+                {
+                    t.hashes[i] = t.hashes[j];
+                    t.clients[i] = t.clients[j];
+                    i = j;
+                }
+            }
+            t.clients[i] = null;
+            size--;
+            return true;
+        }
+        finally
+        {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * Creates a table twice the size of the specified one, holding the same Clients.
+     */
+    private static Table resize(Table old)
+    {
+        Table t = new Table(old.clients.length * 2);
+        int mask = t.clients.length - 1;
+        for(int k = 0; k < old.clients.length; k++)
+        {
+            if(old.clients[k] == null) continue;
+            int i = old.hashes[k] & mask;
+            while(t.clients[i] != null) i = (i + 1) & mask;
+            t.hashes[i] = old.hashes[k];
+            t.clients[i] = old.clients[k];
+        }
+        return t;
+    }
+    
+    /**
+     * Gets the number of Clients in the table.
+     * @return Returns the number of Clients in the table.
+     */
+    public int size()
+    {
+        long stamp = lock.readLock();
+        try
+        {
+            return size;
+        }
+        finally
+        {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    /**
+     * Class to hold the arrays of one table size, so a resize replaces both at once.
+     */
+    private static class Table
+    {
+        private final int[] hashes;
+        private final ServerClient[] clients;
+        
+        private Table(int capacity)
+        {
+            this.hashes = new int[capacity];
+            this.clients = new ServerClient[capacity];
+        }
+    }
+}
@@ -9,59 +9,57 @@ import java.io.Serializable;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.crypto.spec.SecretKeySpec;
 import wrath.net.Client;
 import wrath.net.ConnectionState;
+import wrath.net.Metrics;
 import wrath.net.Packet;
 import wrath.util.Compression;
-import wrath.util.Encryptor;
 
 /**
  * Abstract class that allows for polymorphism based on the protocol used in a connection.
+ * If the "HeartbeatInterval" config option is above 0, a heartbeat is sent every that many milliseconds in which nothing else was sent, so Servers with an "IdleTimeout" do not drop a quiet Client.
  * @author Trent Spears
  */
 public abstract class ClientManager
 {
+    private static TimingWheel heartbeatTimer = null;
+    
     protected Client client;
     protected String ip = "0.0.0.0";
     protected int port = 0;
     private Compression.CompressionType compressFormat = null;
+    private final int compressThreshold = Client.getClientConfig().getInt("CompressionThreshold", 128);
+    private final int maxDecompressedSize = Math.max(1, Client.getClientConfig().getInt("MaxDecompressedSize", 16777216));
     private SecretKeySpec encryptKey = null;
     protected volatile boolean recvFlag = false;
-    private final ArrayList<ReceivedEvent> execList = new ArrayList<>();
+    protected volatile WaitStrategy waitStrategy = WaitStrategy.fromConfig(Client.getClientConfig());
+    protected volatile FlushPolicy flushPolicy = FlushPolicy.fromConfig(Client.getClientConfig());
+    private final int flushBatchSize = Math.max(1, Client.getClientConfig().getInt("FlushBatchSize", 64));
+    private boolean unflushed = false;
+    protected final NetThreadFactory threadFactory = NetThreadFactory.fromConfig(Client.getClientConfig());
+    protected final boolean pooledBuffers = Client.getClientConfig().getBoolean("PooledBuffers", true);
+    private final RingBuffer<ReceivedEvent> execQueue = new RingBuffer<>(Client.getClientConfig().getInt("ExecQueueCapacity", 8192), ReceivedEvent::new);
+    private final AtomicInteger evictions = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Packet> parked = new ConcurrentLinkedQueue<>();
+    private final AtomicReference<Runnable> resumeReading = new AtomicReference<>();
+    private volatile Runnable pendingDisconnect = null;
+    protected volatile OverflowPolicy inboundOverflowPolicy = OverflowPolicy.fromConfig(Client.getClientConfig(), "InboundOverflowPolicy");
+    protected final OverflowCounters inboundOverflows = new OverflowCounters();
+    protected final MetricsRecorder metrics = new MetricsRecorder(true);
+    private final boolean timing = Client.getClientConfig().getBoolean("MetricsTiming", true);
+    private final long heartbeatInterval = Math.max(0, Client.getClientConfig().getInt("HeartbeatInterval", 0));
+    private volatile boolean sentSinceHeartbeat = false;
 
     /**
      * Thread where all data is processed. This includes compression, encryption, and the onReceive() method.
      */
-    protected Thread execThread = new Thread(() ->
-        {
-            while(!recvFlag)
-                if(!execList.isEmpty())
-                {
-                    ReceivedEvent[] events = new ReceivedEvent[execList.size()];
-                    execList.toArray(events);
-                    execList.clear();
-                    for(ReceivedEvent event : events)
-                    {
-                        Packet p = event.packet;
-                        // Decrypt
-                        if(encryptKey != null) p = new Packet(Encryptor.decryptData(p.getRawData(), encryptKey));
-                        
-                        // Decompress
-                        if(compressFormat != null) p = new Packet(Compression.decompressData(p.getRawData(), compressFormat));
-                        
-                        // Check if TERMINATION_CALL packet. Pushes event to Listener if not.
-                        try
-                        {
-                            if(Arrays.equals(p.getRawData(), Packet.TERMINATION_CALL)) disconnect(false);
-                            else event.client.getClientListener().onReceive(event.client, p);
-                        }
-                        catch(NullPointerException e) {}
-                    }
-                }
-        });
+    protected Thread execThread;
     protected Thread recvThread;
     protected ConnectionState state = ConnectionState.DISCONNECTED_IDLE;
     
@@ -97,6 +95,12 @@ public abstract class ClientManager
         state = ConnectionState.CONNECTING;
         System.out.println("] Connecting to [" + ip + ":" + port + "]!");
         
+        // A reader may hand over a disconnect as soon as the socket is created.
+        pendingDisconnect = null;
+        resumeReading.set(null);
+        Packet old;
+        while((old = parked.poll()) != null) old.release();
+        
         try
         {
             // Create the Socket
@@ -105,15 +109,25 @@ public abstract class ClientManager
             // Reset Flag
             recvFlag = false;
             // Manage Threads
-            recvThread.setName("NetClientRecvThread");
+            execThread = threadFactory.newThread(this::runExecThread);
             execThread.setName("NetClientExecThread");
-            recvThread.setDaemon(true);
             execThread.setDaemon(true);
             execThread.start();
-            recvThread.start();
+            // Non-blocking managers are serviced by the shared ClientSelectorGroup and have no receive thread.
+            if(recvThread != null)
+            {
+                recvThread.setName("NetClientRecvThread");
+                recvThread.setDaemon(true);
+                recvThread.start();
+            }
             
             // Set State
             state = ConnectionState.CONNECTED;
+            if(heartbeatInterval > 0)
+            {
+                final Thread t = execThread;
+                getHeartbeatTimer().schedule(() -> heartbeat(t), heartbeatInterval, TimeUnit.MILLISECONDS);
+            }
             client.getClientListener().onConnect(client);
             System.out.println("] Connected to [" + ip + ":" + port + "]!");
         }
@@ -155,6 +169,20 @@ public abstract class ClientManager
         encryptKey = null;
     }
     
+    /**
+     * Decides whether data being pushed may stay in the send buffer instead of being written to the socket right away.
+     * Under {@link wrath.net.managers.FlushPolicy#AUTO}, data pushed from the execution thread may wait until the thread runs out of received data.
+     * @return Returns true if the implementation should not flush after pushing the data.
+     */
+    protected boolean deferFlush()
+    {
+        FlushPolicy policy = flushPolicy;
+        if(policy == FlushPolicy.EXPLICIT) return true;
+        else if(policy == FlushPolicy.IMMEDIATE || Thread.currentThread() != execThread) return false;
+        unflushed = true;
+        return true;
+    }
+    
     /**
      * Disconnects from the Server, if the Client is connected.
      */
@@ -173,9 +201,14 @@ public abstract class ClientManager
         if(!isConnected()) return;
         // Signal other threads to stop
         recvFlag = true;
+        waitStrategy.signal(execQueue);
         // Check for the disconnect signal if Server is dropping this client. Otherwise send disconnect signal to Server.
         if(!calledFirst) System.out.println("] Received disconnect signal from host.");
-        else send(Packet.TERMINATION_CALL);
+        else
+        {
+            send(Packet.TERMINATION_CALL);
+            flushData();
+        }
         System.out.println("] Disconnecting from [" + ip + ":" + port + "]!");
         
         try{if(encryptKey != null) encryptKey.destroy();}catch(Exception e){}
@@ -189,7 +222,8 @@ public abstract class ClientManager
     
     /**
      * Enables data being sent and received to be compressed and decompressed in specified format.
-     * WARNING: This should only be enabled when sending large amounts of data.
+     * Only packets of at least "CompressionThreshold" bytes (default 128) that compression makes smaller are sent compressed; a flag byte on every packet tells the other side which ones are.
+     * Received packets that would decompress to more than "MaxDecompressedSize" bytes (default 16MB) are dropped.
      * WARNING: The Server and Client must both have compression enabled with the same format.
      * @param format The format to compress the data with.
      */
@@ -200,6 +234,7 @@ public abstract class ClientManager
     
     /**
      * Enables all data going through this Client->Server connection to be encrypted/decrypted with the specified phrase/key.
+     * Data is encrypted with AES-GCM, so packets that were tampered with are dropped. The key must be a 128, 192 or 256 bit AES key.
      * @param key The Key generated from {@link wrath.util.Encryption#generateKey(java.lang.String, java.lang.String) }.
      * WARNING: The Server and Client must both have encryption enabled with the same passphrase/key.
      * WARNING: Enabling this process will slow the connection noticeably.
@@ -209,6 +244,116 @@ public abstract class ClientManager
         this.encryptKey = key;
     }
     
+    /**
+     * Processes a single received packet on the execution thread.
+     * @param c The {@link wrath.net.Client} being managed.
+     * @param p The {@link wrath.net.Packet} containing the received data.
+     */
+    private void execute(Client c, Packet p)
+    {
+        Packet raw = p, plain = p;
+        long start = timing && (encryptKey != null || compressFormat != null) ? System.nanoTime() : 0;
+        
+        // Decrypt
+        if(encryptKey != null)
+        {
+            plain = p = PacketCipher.decrypt(raw, encryptKey, pooledBuffers);
+            if(p == null)
+            {
+                System.err.println("] WARNING: Could not decrypt data from [" + ip + ":" + port + "]! Dropping it.");
+                metrics.dropped();
+                raw.release();
+                return;
+            }
+        }
+        
+        // Decompress
+        if(compressFormat != null)
+        {
+            p = PacketCompressor.decode(plain, compressFormat, pooledBuffers, maxDecompressedSize);
+            if(p == null)
+            {
+                System.err.println("] WARNING: Could not decompress data from [" + ip + ":" + port + "]! Dropping it.");
+                metrics.dropped();
+                raw.release();
+                if(plain != raw) plain.release();
+                return;
+            }
+        }
+        if(start != 0) metrics.getDecodeTime().record(System.nanoTime() - start);
+        
+        // Check if TERMINATION_CALL or HEARTBEAT packet. Pushes event to Listener if not.
+        try
+        {
+            if(p.dataEquals(Packet.TERMINATION_CALL)) disconnect(false);
+            else if(!p.dataEquals(Packet.HEARTBEAT))
+            {
+                start = timing ? System.nanoTime() : 0;
+                c.getClientListener().onReceive(c, p);
+                if(timing) metrics.getReceiveTime().record(System.nanoTime() - start);
+            }
+        }
+        catch(NullPointerException e) {}
+        finally
+        {
+            // Give pooled buffers back once the listener is done with them.
+            raw.release();
+            if(plain != raw) plain.release();
+            if(p != plain) p.release();
+        }
+    }
+    
+    /**
+     * Writes any data held back by the {@link wrath.net.managers.FlushPolicy} to the socket.
+     */
+    public void flush()
+    {
+        if(isConnected()) flushData();
+    }
+    
+    /**
+     * Writes any data held back to the socket, through the implementation class.
+     * Protocols that write every message as soon as it is pushed do not need to override this.
+     */
+    protected void flushData() {}
+    
+    /**
+     * Gets the {@link wrath.net.managers.TimingWheel} shared by all Clients to send heartbeats, starting it on first use.
+     * @return Returns the shared heartbeat {@link wrath.net.managers.TimingWheel}.
+     */
+    private static synchronized TimingWheel getHeartbeatTimer()
+    {
+        if(heartbeatTimer == null) heartbeatTimer = new TimingWheel("NetClientTimerThread", Math.max(1, Client.getClientConfig().getInt("TimerTickTime", 100)), TimeUnit.MILLISECONDS, 512);
+        return heartbeatTimer;
+    }
+    
+    /**
+     * Sends a heartbeat if nothing else was sent since the last one, and schedules the next. Runs on the timer thread.
+     * @param t The execution thread of the connection the heartbeat belongs to. Once it changes, the connection is over and no more heartbeats are sent.
+     */
+    private void heartbeat(Thread t)
+    {
+        if(execThread != t || recvFlag || !isConnected()) return;
+        if(sentSinceHeartbeat) sentSinceHeartbeat = false;
+        else
+        {
+            send(Packet.HEARTBEAT);
+            flushData();
+            sentSinceHeartbeat = false;
+        }
+        getHeartbeatTimer().schedule(() -> heartbeat(t), heartbeatInterval, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Gets a snapshot of the Client's statistics.
+     * The "MetricsTiming" config option turns recording the decode and onReceive() times on or off. Defaults to true.
+     * @return Returns a {@link wrath.net.Metrics} snapshot of the Client's statistics.
+     */
+    public Metrics getMetrics()
+    {
+        return metrics.snapshot(inboundOverflows.dropped(), execQueue.size());
+    }
+    
     /**
      * Gets the current state of the Connection, as represented by a value from {@link wrath.net.ConnectionState}.
      * @return Returns the current state of the Connection, as represented by a value from {@link wrath.net.ConnectionState}.
@@ -238,6 +383,42 @@ public abstract class ClientManager
         return port;
     }
     
+    /**
+     * Gets the {@link wrath.net.managers.FlushPolicy} that decides when sent data is written to the socket.
+     * @return Returns the {@link wrath.net.managers.FlushPolicy} used by this Client.
+     */
+    public FlushPolicy getFlushPolicy()
+    {
+        return flushPolicy;
+    }
+    
+    /**
+     * Gets the {@link wrath.net.managers.OverflowPolicy} applied to received data when the execution queue is full.
+     * @return Returns the {@link wrath.net.managers.OverflowPolicy} applied to received data.
+     */
+    public OverflowPolicy getInboundOverflowPolicy()
+    {
+        return inboundOverflowPolicy;
+    }
+    
+    /**
+     * Gets the counters of how often the inbound {@link wrath.net.managers.OverflowPolicy} was applied.
+     * @return Returns the {@link wrath.net.managers.OverflowCounters} of the execution queue.
+     */
+    public OverflowCounters getInboundOverflowCounters()
+    {
+        return inboundOverflows;
+    }
+    
+    /**
+     * Gets the {@link wrath.net.managers.WaitStrategy} used by the execution thread while there is no data to process.
+     * @return Returns the {@link wrath.net.managers.WaitStrategy} used by the execution thread.
+     */
+    public WaitStrategy getWaitStrategy()
+    {
+        return waitStrategy;
+    }
+    
     /**
      * Checks to see if the Client is currently connected to a host.
      * @return If true, the Client is currently connected to a Server. Otherwise false.
@@ -246,18 +427,215 @@ public abstract class ClientManager
     
     /**
      * Sends the final data to the Server.
-     * @param data The final data to send after compression and encryption.
+     * @param data The final data to send after compression and encryption, between the buffer's position and limit.
+     * The buffer may be a view of a {@link wrath.net.Packet} the caller re-uses once this returns, so anything kept for later must be copied.
+     */
+    protected abstract void pushData(ByteBuffer data);
+    
+    /**
+     * Called by the implementation when data could not be written to the socket, to count the failure.
+     */
+    protected void sendFailed()
+    {
+        metrics.sendFailed();
+    }
+    
+    /**
+     * Disconnects from the Server on the execution thread instead of the calling one.
+     * For threads that serve other connections too, such as the {@link wrath.net.managers.ClientSelectorGroup} threads, which must not take the Client's lock or run the listener.
+     * @param reason The {@link wrath.net.ConnectionState} to leave the connection in, or null to keep the one {@link #disconnect(boolean)} sets.
+     * @param calledFirst If true, then the Client is disconnecting from the Server. If false, the Server is disconnecting from the Client.
+     */
+    protected void disconnectLater(ConnectionState reason, boolean calledFirst)
+    {
+        pendingDisconnect = () ->
+        {
+            if(reason != null) state = reason;
+            disconnect(calledFirst);
+        };
+        waitStrategy.signal(execQueue);
+    }
+    
+    /**
+     * Places received data into the execution queue without ever waiting, for threads that serve other connections too.
+     * If the queue is full under {@link wrath.net.managers.OverflowPolicy#BLOCK} or {@link wrath.net.managers.OverflowPolicy#DROP_OLDEST}, nothing is queued.
+     * The caller then keeps the data, stops reading, and calls {@link #pauseReading(java.lang.Runnable)}. Under the other policies the data is dropped as usual, and {@link wrath.net.managers.OverflowPolicy#DISCONNECT_CLIENT} disconnects through {@link #disconnectLater(wrath.net.ConnectionState, boolean)}.
+     * @param c The {@link wrath.net.Client} being managed.
+     * @param p The {@link wrath.net.Packet} containing the received data.
+     * @return Returns false if the data was not queued and must be offered again once there is room. Otherwise true.
+     */
+    protected boolean offer(Client c, Packet p)
+    {
+        long seq = -1;
+        if(!parked.isEmpty() || (seq = execQueue.claim()) < 0)
+        {
+            OverflowPolicy policy = inboundOverflowPolicy;
+            inboundOverflows.increment(policy);
+            if(policy == OverflowPolicy.DROP_NEWEST)
+            {
+                metrics.received(p.getLength());
+                p.release();
+                return true;
+            }
+            else if(policy == OverflowPolicy.DISCONNECT_CLIENT)
+            {
+                metrics.received(p.getLength());
+                p.release();
+                if(pendingDisconnect == null)
+                {
+                    System.err.println("] WARNING: Receiving data from [" + ip + ":" + port + "] faster than it can be processed, disconnecting.");
+                    disconnectLater(ConnectionState.DISCONNECTED_CONNECTION_DROPPED, true);
+                }
+                return true;
+            }
+            // The execution thread discards the oldest received data as soon as it gets back to the queue.
+            else if(policy == OverflowPolicy.DROP_OLDEST) evictions.incrementAndGet();
+            return false;
+        }
+        
+        metrics.received(p.getLength());
+        ReceivedEvent event = execQueue.get(seq);
+        event.client = c;
+        event.packet = p;
+        execQueue.publish(seq);
+        waitStrategy.signal(execQueue);
+        return true;
+    }
+    
+    /**
+     * Called by a reader that stopped reading because {@link #offer(wrath.net.Client, wrath.net.Packet)} found the queue full.
+     * Once the execution thread has emptied half of the queue, it runs the specified callback, which should offer the kept data again and start reading.
+     * @param resume The {@link java.lang.Runnable} to run on the execution thread.
      */
-    protected abstract void pushData(byte[] data);
+    protected void pauseReading(Runnable resume)
+    {
+        resumeReading.set(resume);
+        // The execution thread may have emptied the queue before it could see the callback.
+        waitStrategy.signal(execQueue);
+    }
     
     /**
      * Called when a packet is received and then placed into a queue that will later get executed on the execution thread.
+     * If the queue is full, the inbound {@link wrath.net.managers.OverflowPolicy} decides whether the calling thread waits for space or the data is dropped.
+     * The execution thread cannot wait for its own queue, so where the policy would wait, its data is parked behind the queue and processed once everything queued before it was; until then, the queue counts as full for everyone else.
      * @param c The {@link wrath.net.Client} being managed.
      * @param p The {@link wrath.net.Packet} containing the received data.
      */
     protected void receive(Client c, Packet p)
     {
-        execList.add(new ReceivedEvent(c, p));
+        metrics.received(p.getLength());
+        long seq = -1;
+        if(!parked.isEmpty() || (seq = execQueue.claim()) < 0)
+        {
+            OverflowPolicy policy = inboundOverflowPolicy;
+            inboundOverflows.increment(policy);
+            if(policy == OverflowPolicy.DROP_NEWEST)
+            {
+                p.release();
+                return;
+            }
+            else if(policy == OverflowPolicy.DISCONNECT_CLIENT)
+            {
+                p.release();
+                System.err.println("] WARNING: Receiving data from [" + ip + ":" + port + "] faster than it can be processed, disconnecting.");
+                state = ConnectionState.DISCONNECTED_CONNECTION_DROPPED;
+                disconnect(true);
+                return;
+            }
+            // The execution thread discards the oldest received data as soon as it gets back to the queue.
+            else if(policy == OverflowPolicy.DROP_OLDEST) evictions.incrementAndGet();
+            
+            if(Thread.currentThread() == execThread)
+            {
+                parked.add(p);
+                return;
+            }
+            while(!parked.isEmpty() || (seq = execQueue.claim()) < 0)
+            {
+                if(recvFlag)
+                {
+                    p.release();
+                    return;
+                }
+                Thread.yield();
+            }
+        }
+        
+        ReceivedEvent event = execQueue.get(seq);
+        event.client = c;
+        event.packet = p;
+        execQueue.publish(seq);
+        waitStrategy.signal(execQueue);
+    }
+    
+    /**
+     * Body of the execution thread. Runs until the Client disconnects, or until a newer execution thread replaces this one.
+     */
+    private void runExecThread()
+    {
+        ReceivedEvent event;
+        int idle = 0;
+        int batch = 0;
+        while(!recvFlag && execThread == Thread.currentThread())
+        {
+            Runnable r = pendingDisconnect;
+            if(r != null)
+            {
+                pendingDisconnect = null;
+                r.run();
+                continue;
+            }
+            if(resumeReading.get() != null && execQueue.size() <= execQueue.capacity() / 2 && (r = resumeReading.getAndSet(null)) != null) r.run();
+            
+            Client c;
+            Packet p;
+            if((event = execQueue.peek()) != null)
+            {
+                c = event.client;
+                p = event.packet;
+                event.client = null;
+                event.packet = null;
+                execQueue.advance();
+            }
+            // The queue is empty, so the data this thread parked while it was full is next.
+            else if((p = parked.poll()) != null) c = client;
+            else
+            {
+                // Out of received data, so write everything that was sent while processing it.
+                if(unflushed) flushUnflushed();
+                batch = 0;
+                evictions.set(0);
+                waitStrategy.idle(idle, execQueue);
+                if(idle < Integer.MAX_VALUE) idle++;
+                continue;
+            }
+            idle = 0;
+            
+            // The receiving thread found the queue full under DROP_OLDEST.
+            if(evictions.get() > 0)
+            {
+                evictions.decrementAndGet();
+                p.release();
+                continue;
+            }
+            execute(c, p);
+            
+            // Under constant load the queue may never run dry, so also flush every "FlushBatchSize" packets.
+            if(++batch >= flushBatchSize)
+            {
+                if(unflushed) flushUnflushed();
+                batch = 0;
+            }
+        }
+    }
+    
+    /**
+     * Flushes data sent by the execution thread since the last flush.
+     */
+    private void flushUnflushed()
+    {
+        unflushed = false;
+        flushData();
     }
     
     /**
@@ -266,15 +644,7 @@ public abstract class ClientManager
      */
     public void send(byte[] data)
     {
-        if(client.isConnected())
-        {
-            // Compression
-            if(compressFormat != null) data = Compression.compressData(data, compressFormat);
-            // Encryption
-            if(encryptKey != null) data = Encryptor.encryptData(data, encryptKey);
-            // Push Data
-            pushData(data);
-        }
+        send(new Packet(data));
     }
     
     /**
@@ -283,7 +653,7 @@ public abstract class ClientManager
      */
     public void send(Serializable object)
     {
-        send(new Packet(object).getRawData());
+        send(new Packet(object));
     }
     
     /**
@@ -292,18 +662,70 @@ public abstract class ClientManager
      */
     public void send(Packet packet)
     {
-        send(packet.getRawData());
+        if(client.isConnected())
+        {
+            // Without compression or encryption, the Packet's own buffer is sent as-is.
+            Packet data = packet;
+            // Compression
+            if(compressFormat != null) data = new Packet(PacketCompressor.compress(data.getBuffer(), compressFormat, compressThreshold));
+            // Encryption
+            if(encryptKey != null)
+            {
+                data = PacketCipher.encrypt(data.getBuffer(), encryptKey, pooledBuffers);
+                if(data == null)
+                {
+                    System.err.println("] ERROR:  Could not encrypt data! The key is not a valid AES key.");
+                    return;
+                }
+            }
+            // Push Data
+            try
+            {
+                int length = data.getLength();
+                pushData(data.getBuffer());
+                metrics.sent(length, 1);
+            }
+            finally
+            {
+                if(data != packet) data.release();
+            }
+            if(!sentSinceHeartbeat) sentSinceHeartbeat = true;
+        }
+    }
+    
+    /**
+     * Changes when sent data is written to the socket.
+     * @param policy The {@link wrath.net.managers.FlushPolicy} to use. Defaults to the "FlushPolicy" config option.
+     */
+    public void setFlushPolicy(FlushPolicy policy)
+    {
+        this.flushPolicy = policy;
     }
     
-    private class ReceivedEvent
+    /**
+     * Changes what happens to received data when the execution queue is full.
+     * @param policy The {@link wrath.net.managers.OverflowPolicy} to use. Defaults to the "InboundOverflowPolicy" config option.
+     */
+    public void setInboundOverflowPolicy(OverflowPolicy policy)
     {
-        public final Client client;
-        public final Packet packet;
-
-        private ReceivedEvent(Client c, Packet p)
-        {
-            this.client = c;
-            this.packet = p;
-        }
+        this.inboundOverflowPolicy = policy;
+    }
+    
+    /**
+     * Changes what the execution thread does while there is no data to process.
+     * @param strategy The {@link wrath.net.managers.WaitStrategy} to use. Defaults to the "ExecWaitStrategy" config option.
+     */
+    public void setWaitStrategy(WaitStrategy strategy)
+    {
+        this.waitStrategy = strategy;
+    }
+    
+    /**
+     * Pre-allocated queue slot describing one received packet for the execution thread.
+     */
+    private static class ReceivedEvent
+    {
+        public Client client;
+        public Packet packet;
     }
 }
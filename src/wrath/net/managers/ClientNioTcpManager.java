@@ -0,0 +1,297 @@
+/**
+ * The MIT License (MIT)
+ * Wrath Net Engine Copyright (c) 2016 Trent Spears
+ */
+package wrath.net.managers;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import wrath.net.Client;
+import wrath.net.Packet;
+
+/**
+ * Class to manage Client Connections using non-blocking TCP.
+ * Instead of a receive Thread of its own, the connection is serviced by the {@link wrath.net.managers.ClientSelectorGroup} shared by all Clients.
+ * The Selector thread never waits for this Client: while the execution queue is full, the connection stops reading, which lets TCP slow the Server down, and disconnects happen on the execution thread.
+ * @author Trent Spears
+ */
+public class ClientNioTcpManager extends ClientManager
+{
+    private SocketChannel sock = null;
+    private Connection conn = null;
+    private final int sendArraySize = Client.getClientConfig().getInt("TcpSendArraySize", 8192);
+
+    /**
+     * Constructor.
+     * @param client The {@link wrath.net.Client} being managed.
+     */
+    public ClientNioTcpManager(Client client)
+    {
+        super(client);
+    }
+
+    @Override
+    protected synchronized void closeSocket()
+    {
+        try
+        {
+            if(conn != null) conn.close();
+            sock.close();
+        }
+        catch(IOException e)
+        {
+            System.err.println("] ERROR:  I/O Error occured while closing socket from [" + ip + ":" + port + "]!");
+        }
+    }
+
+    @Override
+    protected synchronized void createNewSocket(InetSocketAddress address) throws IOException
+    {
+        // Define Object
+        sock = SocketChannel.open();
+
+        // Set Object Properties
+        try
+        {
+            sock.socket().setKeepAlive(Client.getClientConfig().getBoolean("TcpKeepAlive", false));
+            sock.socket().setTcpNoDelay(Client.getClientConfig().getBoolean("TcpNoDelay", true));
+            sock.socket().setReceiveBufferSize(Client.getClientConfig().getInt("TcpRecvBufferSize", sock.socket().getReceiveBufferSize()));
+            sock.socket().setSendBufferSize(Client.getClientConfig().getInt("TcpSendBufferSize", sock.socket().getSendBufferSize()));
+            sock.socket().setReuseAddress(Client.getClientConfig().getBoolean("TcpReuseAddress", true));
+            sock.socket().setTrafficClass(Client.getClientConfig().getInt("TcpTrafficClass", sock.socket().getTrafficClass()));
+        }
+        catch(SocketException e)
+        {
+            System.err.println("] ERROR:  Could not set TCP Socket properties! I/O Error!");
+        }
+
+        // Connect
+        sock.socket().connect(address, Client.getClientConfig().getInt("TcpConnectingTimeout", 1000));
+        sock.configureBlocking(false);
+
+        // Hand the connection to the shared Selector threads
+        conn = new Connection(sock);
+        ClientSelectorGroup.getShared().register(sock, SelectionKey.OP_READ, conn);
+    }
+
+    /**
+     * Gets the {@link java.nio.channels.SocketChannel} used by this Client.
+     * @return Returns the {@link java.nio.channels.SocketChannel} used by this Client.
+     */
+    public SocketChannel getRawSocket()
+    {
+        return sock;
+    }
+
+    @Override
+    public boolean isConnected()
+    {
+        return sock != null && sock.isOpen() && sock.isConnected();
+    }
+
+    @Override
+    protected void pushData(ByteBuffer data)
+    {
+        Connection c = conn;
+        if(c != null) c.write(data.duplicate());
+    }
+
+    @Override
+    protected void flushData()
+    {
+        Connection c = conn;
+        if(c == null) return;
+        try
+        {
+            c.flush();
+        }
+        catch(IOException e)
+        {
+            System.err.println("] ERROR:  Could not send data to [" + ip + ":" + port + "]! I/O Error!");
+            sendFailed();
+        }
+    }
+
+    /**
+     * Class to hold the state of the non-blocking connection.
+     */
+    private class Connection implements ClientSelectorGroup.Handler
+    {
+        private final SocketChannel channel;
+        private final FrameDecoder decoder = new FrameDecoder(Client.getClientConfig().getInt("TcpMaxFrameSize", 16777216), pooledBuffers);
+        private SelectionKey key = null;
+        private final OutboundBuffer outbound = new OutboundBuffer(sendArraySize, pooledBuffers);
+        private final Runnable resumer = this::resume;
+        private volatile boolean paused = false;
+        // Kept while reading is paused: the message the execution queue had no room for, and the bytes read after it.
+        private Packet held = null;
+        private ByteBuffer leftover = null;
+
+        private Connection(SocketChannel channel)
+        {
+            this.channel = channel;
+        }
+
+        private synchronized void close()
+        {
+            if(key != null) key.cancel();
+            outbound.clear();
+            decoder.close();
+            if(held != null) held.release();
+            held = null;
+            leftover = null;
+        }
+        
+        /**
+         * Hands every complete message in the buffer to the execution thread.
+         * If the execution queue is full, reading is paused, and the message and the bytes after it are kept until the execution thread has made room.
+         * @param buf The received bytes, in read mode.
+         * @param shared True if the buffer is the Selector thread's read buffer, which is re-used once this returns.
+         * @return Returns true if all messages were handed over. Otherwise false.
+         */
+        private boolean deliver(ByteBuffer buf, boolean shared) throws IOException
+        {
+            Packet rp;
+            while((rp = decoder.decode(buf)) != null)
+            {
+                if(offer(client, rp)) continue;
+                held = rp;
+                if(buf.hasRemaining() && shared)
+                {
+                    leftover = ByteBuffer.allocate(buf.remaining());
+                    leftover.put(buf);
+                    leftover.flip();
+                }
+                else if(buf.hasRemaining()) leftover = buf;
+                paused = true;
+                interest();
+                pauseReading(resumer);
+                return false;
+            }
+            return true;
+        }
+        
+        /**
+         * Hands over the data kept while reading was paused, and reads again once all of it fit. Runs on the execution thread.
+         */
+        private void resume()
+        {
+            Packet p = held;
+            ByteBuffer rest = leftover;
+            held = null;
+            leftover = null;
+            if(p == null) return;
+            if(!offer(client, p))
+            {
+                held = p;
+                leftover = rest;
+                pauseReading(resumer);
+                return;
+            }
+            
+            try
+            {
+                if(rest != null && !deliver(rest, false)) return;
+            }
+            catch(IOException e)
+            {
+                failed(e);
+                return;
+            }
+            paused = false;
+            interest();
+        }
+
+        @Override
+        public void failed(IOException e)
+        {
+            if(isConnected())
+            {
+                System.err.println("] ERROR:  Lost connection to [" + ip + ":" + port + "]! I/O Error!");
+                disconnectLater(null, false);
+            }
+        }
+
+        /**
+         * Writes as much queued data as the socket will accept without blocking, in one gathering write.
+         * Anything left over stays queued until the Selector reports the channel as writable again.
+         */
+        private synchronized void flush() throws IOException
+        {
+            outbound.writeTo(channel);
+            interest();
+        }
+
+        /**
+         * Asks the Selector to report the channel as writable only while data is waiting, and as readable unless reading is paused.
+         */
+        private synchronized void interest()
+        {
+            int ops = (paused ? 0 : SelectionKey.OP_READ) | (outbound.isEmpty() ? 0 : SelectionKey.OP_WRITE);
+            if(key != null && key.isValid() && key.interestOps() != ops)
+            {
+                key.interestOps(ops);
+                key.selector().wakeup();
+            }
+        }
+
+        @Override
+        public void ready(SelectionKey key, ByteBuffer readBuf) throws IOException
+        {
+            if(key.isWritable()) flush();
+            if(paused || !key.isValid() || !key.isReadable()) return;
+
+            int len;
+            while((len = channel.read(readBuf)) > 0)
+            {
+                readBuf.flip();
+                if(!deliver(readBuf, true)) return;
+                readBuf.clear();
+            }
+
+            if(len < 0)
+            {
+                key.cancel();
+                if(isConnected()) disconnectLater(null, false);
+            }
+        }
+
+        @Override
+        public synchronized void registered(SelectionKey key)
+        {
+            this.key = key;
+            // Data may have been queued before the channel was registered.
+            if(!outbound.isEmpty()) key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+
+        /**
+         * Sends a message according to the {@link wrath.net.managers.FlushPolicy}.
+         * If the message may wait, it is copied into the outbound buffer, which is written once it holds "TcpSendArraySize" bytes or is flushed.
+         * Otherwise as much of it as the socket will accept is written without blocking, and only what the socket did not take is copied.
+         */
+        private synchronized void write(ByteBuffer data)
+        {
+            int length = data.remaining();
+            try
+            {
+                if(!deferFlush()) outbound.write(channel, data);
+                else
+                {
+                    outbound.add(data);
+                    if(outbound.pending() < sendArraySize) return;
+                    outbound.writeTo(channel);
+                }
+                interest();
+            }
+            catch(IOException e)
+            {
+                System.err.println("] ERROR:  Could not send data to [" + ip + ":" + port + "]! DataSize: " + length + "B");
+                sendFailed();
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * The MIT License (MIT)
+ * Wrath Net Engine Copyright (c) 2016 Trent Spears
+ */
+package wrath.net.managers;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import wrath.net.BufferPool;
+import wrath.net.Client;
+import wrath.net.Packet;
+import wrath.net.PooledBuffer;
+
+/**
+ * Class to manage Client Connections using non-blocking UDP.
+ * Instead of a receive Thread of its own, the channel is serviced by the {@link wrath.net.managers.ClientSelectorGroup} shared by all Clients.
+ * The Selector thread never waits for this Client: while the execution queue is full, the channel stops reading, and datagrams that do not fit in the socket's receive buffer meanwhile are lost.
+ * @author Trent Spears
+ */
+public class ClientNioUdpManager extends ClientManager
+{
+    private DatagramChannel sock = null;
+    private volatile SelectionKey key = null;
+
+    /**
+     * Constructor.
+     * @param client The {@link wrath.net.Client} being managed.
+     */
+    public ClientNioUdpManager(Client client)
+    {
+        super(client);
+    }
+
+    @Override
+    protected synchronized void closeSocket()
+    {
+        try
+        {
+            if(key != null) key.cancel();
+            sock.close();
+        }
+        catch(IOException e)
+        {
+            System.err.println("] ERROR:  I/O Error occured while closing socket from [" + ip + ":" + port + "]!");
+        }
+    }
+
+    @Override
+    protected synchronized void createNewSocket(InetSocketAddress addr) throws IOException
+    {
+        // Define Object
+        sock = DatagramChannel.open();
+
+        // Set Object Properties
+        try
+        {
+            sock.socket().setReceiveBufferSize(Client.getClientConfig().getInt("UdpRecvBufferSize", sock.socket().getReceiveBufferSize()));
+            sock.socket().setBroadcast(Client.getClientConfig().getBoolean("UdpSBroadcast", sock.socket().getBroadcast()));
+            sock.socket().setSendBufferSize(Client.getClientConfig().getInt("UdpSendBufferSize", sock.socket().getSendBufferSize()));
+            sock.socket().setReuseAddress(Client.getClientConfig().getBoolean("UdpReuseAddress", sock.socket().getReuseAddress()));
+            sock.socket().setTrafficClass(Client.getClientConfig().getInt("UdpTrafficClass", sock.socket().getTrafficClass()));
+        }
+        catch(SocketException ex)
+        {
+            System.err.println("] ERROR:  Could not set UDP Socket properties! I/O Error!");
+        }
+
+        // Connect
+        sock.connect(addr);
+        sock.configureBlocking(false);
+        sock.write(ByteBuffer.wrap(new byte[]{0}));
+
+        // Hand the channel to the shared Selector threads
+        final DatagramChannel ch = sock;
+        ClientSelectorGroup.getShared().register(ch, SelectionKey.OP_READ, new ClientSelectorGroup.Handler()
+        {
+            private final Runnable resumer = this::resume;
+            // The datagram the execution queue had no room for, kept while reading is paused.
+            private Packet held = null;
+            private volatile boolean paused = false;
+
+            @Override
+            public void failed(IOException e)
+            {
+                if(ch.isOpen()) System.err.println("] ERROR:  Could not read data from [" + ip + ":" + port + "]! I/O Error!");
+            }
+
+            @Override
+            public void ready(SelectionKey key, ByteBuffer readBuf) throws IOException
+            {
+                if(paused) return;
+                int len;
+                while(true)
+                {
+                    try
+                    {
+                        len = ch.read(readBuf);
+                    }
+                    catch(PortUnreachableException e)
+                    {
+                        // Nothing is listening on the Server's port yet; keep waiting.
+                        readBuf.clear();
+                        continue;
+                    }
+                    if(len <= 0) break;
+
+                    readBuf.flip();
+                    PooledBuffer rbuf = BufferPool.allocate(len, pooledBuffers);
+                    readBuf.get(rbuf.array(), 0, len);
+                    readBuf.clear();
+                    Packet p = new Packet(rbuf, len);
+                    if(!offer(client, p))
+                    {
+                        // Stop reading until the execution thread has made room, instead of waiting on the shared Selector thread.
+                        held = p;
+                        paused = true;
+                        key.interestOps(0);
+                        pauseReading(resumer);
+                        return;
+                    }
+                }
+            }
+
+            /**
+             * Hands over the datagram kept while reading was paused, and reads again if it fit. Runs on the execution thread.
+             */
+            private void resume()
+            {
+                Packet p = held;
+                held = null;
+                if(p == null || !ch.isOpen()) return;
+                if(!offer(client, p))
+                {
+                    held = p;
+                    pauseReading(resumer);
+                    return;
+                }
+                paused = false;
+                SelectionKey k = key;
+                if(k != null && k.isValid())
+                {
+                    k.interestOps(SelectionKey.OP_READ);
+                    k.selector().wakeup();
+                }
+            }
+
+            @Override
+            public void registered(SelectionKey k)
+            {
+                key = k;
+            }
+        });
+    }
+
+    /**
+     * Gets the {@link java.nio.channels.DatagramChannel} used by this Client.
+     * @return Returns the {@link java.nio.channels.DatagramChannel} used by this Client.
+     */
+    public DatagramChannel getRawSocket()
+    {
+        return sock;
+    }
+
+    @Override
+    public boolean isConnected()
+    {
+        return sock != null && sock.isOpen() && sock.isConnected();
+    }
+
+    @Override
+    protected void pushData(ByteBuffer data)
+    {
+        try
+        {
+            // Like any UDP send, the datagram is dropped if the socket's send buffer is full.
+            sock.write(data.duplicate());
+        }
+        catch(IOException ex)
+        {
+            System.err.println("] ERROR:  Could not send data to [" + ip + ":" + port + "]! I/O Error!");
+            sendFailed();
+        }
+    }
+}
@@ -5,51 +5,109 @@
 package wrath.net.managers;
 
 import java.io.IOException;
+import java.net.DatagramPacket;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import wrath.net.Client;
+import wrath.net.ConnectionState;
 import wrath.net.Packet;
 
 /**
  * Class to manage Client Connections using RUDP.
+ * The connection is made reliable by a {@link wrath.net.managers.RudpSession}, and a timer thread resends lost datagrams every "RudpTickTime" ms.
  * @author Trent Spears
  */
 public class ClientRudpManager extends ClientUdpManager
 {
-    protected boolean conf = false;
-    protected long pid = Long.MIN_VALUE;
-    protected final ByteBuffer buf = ByteBuffer.allocate(Long.BYTES);
-    
+    private volatile RudpSession session = null;
+    private Thread timerThread;
+
     /**
      * Constructor.
      * @param client The {@link wrath.net.Client} being managed.
      */
-    public ClientRudpManager(Client client) 
+    public ClientRudpManager(Client client)
     {
         super(client);
     }
 
+    @Override
+    protected synchronized void closeSocket()
+    {
+        super.closeSocket();
+        RudpSession s = session;
+        if(s != null) s.close();
+    }
+
     @Override
     protected synchronized void createNewSocket(InetSocketAddress addr) throws IOException
     {
+        final RudpSession s = new RudpSession(Client.getClientConfig())
+        {
+            @Override
+            protected void deliver(Packet p)
+            {
+                ClientRudpManager.this.receive(client, p);
+            }
+
+            @Override
+            protected void dropped()
+            {
+                System.err.println("] ERROR:  Server at [" + ip + ":" + port + "] stopped responding!");
+                state = ConnectionState.DISCONNECTED_CONNECTION_DROPPED;
+                disconnect(false);
+            }
+
+            @Override
+            protected void transmit(byte[] data, int length)
+            {
+                try
+                {
+                    sock.send(new DatagramPacket(data, 0, length));
+                }
+                catch(IOException ex)
+                {
+                    System.err.println("] ERROR:  Could not send data to [" + ip + ":" + port + "]! I/O Error!");
+                    sendFailed();
+                }
+            }
+        };
+        this.session = s;
         super.createNewSocket(addr);
-        send(Packet.RUDP_REQ);
+
+        final long tick = Client.getClientConfig().getInt("RudpTickTime", 10);
+        this.timerThread = new Thread(() ->
+        {
+            while(session == s && isConnected())
+            {
+                s.tick();
+                try
+                {
+                    Thread.sleep(tick);
+                }
+                catch(InterruptedException e)
+                {
+                    break;
+                }
+            }
+        });
+        timerThread.setName("NetClientRudpTimerThread");
+        timerThread.setDaemon(true);
+        timerThread.start();
     }
-    
+
     @Override
-    protected synchronized void pushData(byte[] data)
+    protected void onDatagram(DatagramPacket packet)
     {
-        byte[] r = data;
-        if(conf)
-        {
-            r = new byte[data.length + 1 + Long.BYTES];
-            System.arraycopy(data, 0, r, 0, data.length);
-            buf.putLong(pid++);
-            System.arraycopy(buf.array(), 0, r, data.length, Long.BYTES);
-            r[r.length - 1] = (char) 0;
-            buf.clear();
-        }
-        
-        super.send(r);
+        RudpSession s = session;
+        if(s != null) s.receive(packet.getData(), packet.getOffset(), packet.getLength(), pooledBuffers);
+    }
+
+    @Override
+    protected void pushData(ByteBuffer data)
+    {
+        RudpSession s = session;
+        // While disconnecting, the termination call must not wait for acknowledgements that may never come.
+        if(s != null) s.send(data, recvFlag ? OverflowPolicy.DROP_NEWEST : OverflowPolicy.BLOCK, null);
     }
 }
@@ -0,0 +1,181 @@
+/**
+ * The MIT License (MIT)
+ * Wrath Net Engine Copyright (c) 2016 Trent Spears
+ */
+package wrath.net.managers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import wrath.net.Client;
+
+/**
+ * Class to hold the {@link java.nio.channels.Selector} threads shared by every non-blocking Client in the process.
+ * Instead of a receive Thread per Client, each channel is registered with one of a small, fixed set of Selector threads ("ClientSelectorThreads", defaults to the number of processors).
+ * The threads sleep in {@link java.nio.channels.Selector#select()} while there is nothing to read, and wake as soon as data arrives.
+ * @author Trent Spears
+ */
+public final class ClientSelectorGroup
+{
+    private static ClientSelectorGroup shared = null;
+
+    private final Loop[] loops;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private ClientSelectorGroup(int threads) throws IOException
+    {
+        loops = new Loop[Math.max(1, threads)];
+        int size = Client.getClientConfig().getInt("NioReadBufferSize", 65536);
+        for(int i = 0; i < loops.length; i++)
+        {
+            loops[i] = new Loop(Selector.open(), size);
+            loops[i].thread.setName("NetClientSelectorThread-" + i);
+            loops[i].thread.setDaemon(true);
+            loops[i].thread.start();
+        }
+    }
+
+    /**
+     * Gets the group shared by all Clients, starting its threads the first time it is used.
+     * @return Returns the shared {@link wrath.net.managers.ClientSelectorGroup}.
+     * @throws IOException Thrown if the Selectors could not be opened.
+     */
+    public static synchronized ClientSelectorGroup getShared() throws IOException
+    {
+        if(shared == null) shared = new ClientSelectorGroup(Client.getClientConfig().getInt("ClientSelectorThreads", Runtime.getRuntime().availableProcessors()));
+        return shared;
+    }
+
+    /**
+     * Registers a non-blocking channel with one of the Selector threads. Registration completes asynchronously on that thread.
+     * @param channel The {@link java.nio.channels.SelectableChannel} to register. Must be in non-blocking mode.
+     * @param ops The interest set to register with.
+     * @param handler The {@link wrath.net.managers.ClientSelectorGroup.Handler} to call when the channel is ready.
+     */
+    public void register(SelectableChannel channel, int ops, Handler handler)
+    {
+        Loop loop = loops[(next.getAndIncrement() & 0x7FFFFFFF) % loops.length];
+        loop.pending.add(new Registration(channel, ops, handler));
+        loop.selector.wakeup();
+    }
+
+    /**
+     * Interface for the owner of a registered channel.
+     * All methods are called on the channel's Selector thread, so they must not block.
+     * Client managers hand received data over with {@link wrath.net.managers.ClientManager#offer(wrath.net.Client, wrath.net.Packet)} and disconnect with {@link wrath.net.managers.ClientManager#disconnectLater(wrath.net.ConnectionState, boolean)}.
+     */
+    public interface Handler
+    {
+        /**
+         * Called when the channel could not be registered, or when {@link #ready(java.nio.channels.SelectionKey, java.nio.ByteBuffer)} threw an exception.
+         * @param e The {@link java.io.IOException} that occured.
+         */
+        public void failed(IOException e);
+
+        /**
+         * Called when the channel is ready for one of the operations in its interest set.
+         * @param key The {@link java.nio.channels.SelectionKey} of the channel.
+         * @param readBuf A cleared, direct {@link java.nio.ByteBuffer} shared by all channels of the Selector thread. Its content is not kept between calls.
+         * @throws IOException Thrown if the channel could not be read from or written to.
+         */
+        public void ready(SelectionKey key, ByteBuffer readBuf) throws IOException;
+
+        /**
+         * Called once the channel has been registered.
+         * @param key The {@link java.nio.channels.SelectionKey} of the channel.
+         */
+        public void registered(SelectionKey key);
+    }
+
+    /**
+     * Class to represent one Selector Thread.
+     */
+    private static class Loop
+    {
+        private final ConcurrentLinkedQueue<Registration> pending = new ConcurrentLinkedQueue<>();
+        private final ByteBuffer readBuf;
+        private final Selector selector;
+        private final Thread thread;
+
+        private Loop(Selector selector, int bufferSize)
+        {
+            this.readBuf = ByteBuffer.allocateDirect(bufferSize);
+            this.selector = selector;
+            this.thread = new Thread(this::run);
+        }
+
+        private void run()
+        {
+            while(selector.isOpen())
+            {
+                try
+                {
+                    selector.select();
+
+                    Registration r;
+                    while((r = pending.poll()) != null)
+                    {
+                        try
+                        {
+                            r.handler.registered(r.channel.register(selector, r.ops, r.handler));
+                        }
+                        catch(IOException e)
+                        {
+                            r.handler.failed(e);
+                        }
+                    }
+
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while(it.hasNext())
+                    {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        Handler h = (Handler) key.attachment();
+                        try
+                        {
+                            readBuf.clear();
+                            h.ready(key, readBuf);
+                        }
+                        catch(CancelledKeyException e){}
+                        catch(IOException e)
+                        {
+                            key.cancel();
+                            h.failed(e);
+                        }
+                    }
+                }
+                catch(IOException e)
+                {
+                    System.err.println("] ERROR: Selector failure on " + thread.getName() + "! I/O Error!");
+                }
+                catch(Exception e)
+                {
+                    System.err.println("] ERROR: Unexpected error on " + thread.getName() + "!");
+                }
+            }
+        }
+    }
+
+    /**
+     * Class to hold a channel waiting to be registered.
+     */
+    private static class Registration
+    {
+        private final SelectableChannel channel;
+        private final Handler handler;
+        private final int ops;
+
+        private Registration(SelectableChannel channel, int ops, Handler handler)
+        {
+            this.channel = channel;
+            this.handler = handler;
+            this.ops = ops;
+        }
+    }
+}
@@ -4,10 +4,17 @@
  */
 package wrath.net.managers;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
 import wrath.net.Client;
 import wrath.net.ConnectionState;
 import wrath.net.Packet;
@@ -19,6 +26,9 @@ import wrath.net.Packet;
 public class ClientTcpManager extends ClientManager
 {
     private Socket sock;
+    private OutputStream out;
+    // Holds the length header of each message sent, and pieces of messages that are not backed by an array.
+    private final ByteBuffer sendScratch = ByteBuffer.allocate(1024);
     
     /**
      * Constructor.
@@ -53,31 +63,59 @@ public class ClientTcpManager extends ClientManager
         }
         
         // Define Receive Thread
-        this.recvThread = new Thread(() ->
+        this.recvThread = threadFactory.newThread(() ->
         {
-            final byte[] buf = new byte[Client.getClientConfig().getInt("TcpRecvArraySize", 512)];
-            byte[] rbuf;
+            final InputStream in;
+            try
+            {
+                in = new BufferedInputStream(sock.getInputStream(), Client.getClientConfig().getInt("TcpRecvArraySize", 512));
+            }
+            catch(IOException e)
+            {
+                System.err.println("] ERROR:  Could not open input stream from [" + ip + ":" + port + "]!");
+                return;
+            }
+            final FrameDecoder decoder = new FrameDecoder(Client.getClientConfig().getInt("TcpMaxFrameSize", 16777216), pooledBuffers);
+            Packet rp;
+            boolean dropped = false;
             while(isConnected() && !recvFlag)
             {
                 try
                 {
-                    while(sock.getInputStream().available() < 1 && !sock.isClosed()) continue;
-                    int len = sock.getInputStream().read(buf);
-                    if(len < 1) break;
-                    rbuf = new byte[len];
-                    System.arraycopy(buf, 0, rbuf, 0, len);
+                    rp = decoder.read(in);
                 }
-                catch(IOException e)
+                catch(SocketTimeoutException e)
                 {
-                    if(isConnected() && !recvFlag) System.err.println("] ERROR:  Could not read from input stream from [" + ip + ":" + port + "]!");
                     continue;
                 }
-                receive(client, new Packet(rbuf));
+                catch(EOFException e)
+                {
+                    break;
+                }
+                catch(IOException e)
+                {
+                    // After a broken frame the position in the stream is lost, so the connection cannot be read any further.
+                    if(isConnected() && !recvFlag)
+                    {
+                        System.err.println("] ERROR:  Could not read from input stream from [" + ip + ":" + port + "]!");
+                        dropped = true;
+                    }
+                    break;
+                }
+                receive(client, rp);
+            }
+            decoder.close();
+            if(dropped)
+            {
+                state = ConnectionState.DISCONNECTED_CONNECTION_DROPPED;
+                disconnect(false);
             }
         });
         
         // Connect
         sock.connect(address, Client.getClientConfig().getInt("TcpConnectingTimeout", 1000));
+        // Messages are collected in the stream's buffer and written to the socket together when it is flushed.
+        out = new BufferedOutputStream(sock.getOutputStream(), Client.getClientConfig().getInt("TcpSendArraySize", 8192));
     }
     
     @Override
@@ -111,16 +149,31 @@ public class ClientTcpManager extends ClientManager
     }
     
     @Override
-    protected synchronized void pushData(byte[] data)
+    protected synchronized void flushData()
+    {
+        try
+        {
+            if(out != null) out.flush();
+        }
+        catch(IOException ex)
+        {
+            System.err.println("] ERROR:  Could not send data to [" + ip + ":" + port + "]! I/O Error!");
+            sendFailed();
+        }
+    }
+    
+    @Override
+    protected synchronized void pushData(ByteBuffer data)
     {
         try 
         {
-            sock.getOutputStream().write(data);
-            sock.getOutputStream().flush();
+            FrameDecoder.writeFrame(data, out, sendScratch);
+            if(!deferFlush()) out.flush();
         }
         catch (IOException ex) 
         {
-            System.err.println("] ERROR:  Could not send data to [" + ip + ":" + port + "]! DataSize: " + data.length + "B");
+            System.err.println("] ERROR:  Could not send data to [" + ip + ":" + port + "]! DataSize: " + data.remaining() + "B");
+            sendFailed();
         }
     }
 }
\ No newline at end of file
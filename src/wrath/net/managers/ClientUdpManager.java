@@ -9,8 +9,11 @@ import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
 import wrath.net.Client;
+import wrath.net.BufferPool;
 import wrath.net.Packet;
+import wrath.net.PooledBuffer;
 
 /**
  * Class to manage Client Connections using UDP.
@@ -51,19 +54,16 @@ public class ClientUdpManager extends ClientManager
         }
         
         // Define Receive Thread
-        this.recvThread = new Thread(() ->
+        this.recvThread = threadFactory.newThread(() ->
         {
             final byte[] buf = new byte[Client.getClientConfig().getInt("UdpRecvArraySize", 512)];
             final DatagramPacket packet = new DatagramPacket(buf, buf.length);
-            byte[] rbuf;
             while(!recvFlag && isConnected())
             {
                 try
                 {
                     sock.receive(packet);
-                    rbuf = new byte[packet.getLength()];
-                    System.arraycopy(packet.getData(), 0, rbuf, 0, packet.getLength());
-                    receive(client, new Packet(rbuf));
+                    onDatagram(packet);
                 }
                 catch(IOException ex){}
             }
@@ -96,16 +96,34 @@ public class ClientUdpManager extends ClientManager
         return sock != null && sock.isConnected() && !sock.isClosed();
     }
     
+    /**
+     * Handles a datagram received from the Server. Called on the receive thread.
+     * @param packet The {@link java.net.DatagramPacket} that was received. Its array is re-used once this returns.
+     */
+    protected void onDatagram(DatagramPacket packet)
+    {
+        PooledBuffer rbuf = BufferPool.allocate(packet.getLength(), pooledBuffers);
+        System.arraycopy(packet.getData(), packet.getOffset(), rbuf.array(), 0, packet.getLength());
+        receive(client, new Packet(rbuf, packet.getLength()));
+    }
+    
     @Override
-    protected synchronized void pushData(byte[] data)
+    protected synchronized void pushData(ByteBuffer data)
     {
         try
         {
-            sock.send(new DatagramPacket(data, data.length));
+            if(data.hasArray()) sock.send(new DatagramPacket(data.array(), data.arrayOffset() + data.position(), data.remaining()));
+            else
+            {
+                byte[] r = new byte[data.remaining()];
+                data.duplicate().get(r);
+                sock.send(new DatagramPacket(r, r.length));
+            }
         }
         catch(IOException ex)
         {
             System.err.println("] ERROR:  Could not send data to [" + sock.getInetAddress().getHostAddress() + ":" + sock.getPort() + "]! I/O Error!");
+            sendFailed();
         }
     }
 }
@@ -0,0 +1,44 @@
+/**
+ * The MIT License (MIT)
+ * Wrath Net Engine Copyright (c) 2016 Trent Spears
+ */
+package wrath.net.managers;
+
+import wrath.util.Config;
+
+/**
+ * Enumerator describing when data sent over a TCP connection is actually written to the socket.
+ * Writing several messages at once costs one system call instead of one per message.
+ * @author Trent Spears
+ */
+public enum FlushPolicy
+{
+    /**
+     * Every message is written as soon as it is sent. This was the only behaviour before flush policies existed.
+     */
+    IMMEDIATE,
+    /**
+     * Messages sent from an execution thread (for example in onReceive()) are held until that thread has no more events to process, then written together.
+     * Messages sent from any other thread are written immediately.
+     */
+    AUTO,
+    /**
+     * Messages are held until flush() is called on the Server, ServerClient or Client, or until the connection's send buffer fills up.
+     */
+    EXPLICIT;
+
+    /**
+     * Gets the {@link wrath.net.managers.FlushPolicy} named by the "FlushPolicy" option of the specified {@link wrath.util.Config}.
+     * Possible values are "immediate", "auto" and "explicit". Defaults to "auto".
+     * @param config The {@link wrath.util.Config} to read the option from.
+     * @return Returns the {@link wrath.net.managers.FlushPolicy} named by the config.
+     */
+    public static FlushPolicy fromConfig(Config config)
+    {
+        String name = config.getString("FlushPolicy", "auto");
+        if("immediate".equalsIgnoreCase(name)) return IMMEDIATE;
+        else if("explicit".equalsIgnoreCase(name)) return EXPLICIT;
+        else if(!"auto".equalsIgnoreCase(name)) System.err.println("] WARNING: Unknown FlushPolicy '" + name + "', using 'auto'.");
+        return AUTO;
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * The MIT License (MIT)
+ * Wrath Net Engine Copyright (c) 2016 Trent Spears
+ */
+package wrath.net.managers;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import wrath.net.BufferPool;
+import wrath.net.Packet;
+import wrath.net.PooledBuffer;
+
+/**
+ * Class to split a TCP byte stream back into the messages it was sent as.
+ * Every message on the wire is prefixed by its length, encoded as an unsigned varint (7 bits per byte, least significant group first).
+ * Each connection owns one decoder, which keeps any partially received message between reads.
+ * Received bytes are copied once, straight from the socket buffer into the array backing the message's {@link wrath.net.Packet}.
+ * @author Trent Spears
+ */
+public class FrameDecoder
+{
+    /**
+     * The largest number of bytes a length header can take up.
+     */
+    public static final int MAX_HEADER_LENGTH = 5;
+
+    private PooledBuffer buffer = null;
+    private byte[] frame = null;
+    private int filled = 0;
+    private int header = 0;
+    private int headerShift = 0;
+    private final int maxFrameSize;
+    private final boolean pooled;
+
+    /**
+     * Constructor.
+     * @param maxFrameSize The largest message, in bytes, that will be accepted before the stream is treated as corrupt.
+     */
+    public FrameDecoder(int maxFrameSize)
+    {
+        this(maxFrameSize, false);
+    }
+
+    /**
+     * Constructor.
+     * @param maxFrameSize The largest message, in bytes, that will be accepted before the stream is treated as corrupt.
+     * @param pooled If true, messages are received into arrays borrowed from the {@link wrath.net.BufferPool}.
+     */
+    public FrameDecoder(int maxFrameSize, boolean pooled)
+    {
+        this.maxFrameSize = maxFrameSize;
+        this.pooled = pooled;
+    }
+
+    /**
+     * Gets the number of bytes needed to write the length header of a message.
+     * @param length The length of the message.
+     * @return Returns the number of bytes needed to write the length header of a message.
+     */
+    public static int headerLength(int length)
+    {
+        int n = 1;
+        while((length >>>= 7) != 0) n++;
+        return n;
+    }
+
+    /**
+     * Writes the length header of a message into the specified buffer.
+     * @param length The length of the message.
+     * @param dst The {@link java.nio.ByteBuffer} to write the header into.
+     */
+    public static void writeHeader(int length, ByteBuffer dst)
+    {
+        while((length & ~0x7F) != 0)
+        {
+            dst.put((byte) ((length & 0x7F) | 0x80));
+            length >>>= 7;
+        }
+        dst.put((byte) length);
+    }
+
+    /**
+     * Creates the length header of a message.
+     * @param length The length of the message.
+     * @return Returns the length header in the form of a byte array.
+     */
+    public static byte[] header(int length)
+    {
+        byte[] r = new byte[headerLength(length)];
+        writeHeader(length, ByteBuffer.wrap(r));
+        return r;
+    }
+
+    /**
+     * Writes a message and its length header to a stream, without allocating or copying heap data.
+     * The stream is not flushed.
+     * @param data The {@link java.nio.ByteBuffer} holding the message between its position and limit. Its position is not changed.
+     * @param out The {@link java.io.OutputStream} to write to.
+     * @param scratch A heap {@link java.nio.ByteBuffer} of at least {@link #MAX_HEADER_LENGTH} bytes kept by the caller, used for the header and to copy data that is not backed by an array.
+     * @throws IOException Thrown if the stream could not be written to.
+     */
+    public static void writeFrame(ByteBuffer data, OutputStream out, ByteBuffer scratch) throws IOException
+    {
+        int length = data.remaining();
+        scratch.clear();
+        writeHeader(length, scratch);
+        out.write(scratch.array(), 0, scratch.position());
+        if(data.hasArray()) out.write(data.array(), data.arrayOffset() + data.position(), length);
+        else
+        {
+            ByteBuffer src = data.duplicate();
+            while(src.hasRemaining())
+            {
+                int n = Math.min(src.remaining(), scratch.capacity());
+                src.get(scratch.array(), 0, n);
+                out.write(scratch.array(), 0, n);
+            }
+        }
+    }
+
+    /**
+     * Consumes one byte of the length header.
+     * @return Returns true if the header is complete and the frame array has been allocated.
+     */
+    private boolean headerByte(int b) throws IOException
+    {
+        header |= (b & 0x7F) << headerShift;
+        headerShift += 7;
+        if((b & 0x80) != 0)
+        {
+            if(headerShift >= MAX_HEADER_LENGTH * 7) throw new IOException("Malformed frame header!");
+            return false;
+        }
+        if(header < 0 || header > maxFrameSize) throw new IOException("Frame of " + header + "B exceeds the maximum frame size of " + maxFrameSize + "B!");
+        if(pooled)
+        {
+            buffer = BufferPool.allocate(header);
+            frame = buffer.array();
+        }
+        else frame = new byte[header];
+        filled = 0;
+        return true;
+    }
+
+    private Packet finish()
+    {
+        Packet r = buffer != null ? new Packet(buffer, header) : new Packet(frame);
+        buffer = null;
+        frame = null;
+        header = 0;
+        headerShift = 0;
+        return r;
+    }
+
+    /**
+     * Gives back any partially received message. Called when the connection is closed.
+     */
+    public void close()
+    {
+        if(buffer != null) buffer.release();
+        buffer = null;
+        frame = null;
+    }
+
+    /**
+     * Decodes the next complete message from the specified buffer.
+     * Bytes belonging to an incomplete message are kept by the decoder, so the buffer is always fully consumed once this returns null.
+     * @param src The {@link java.nio.ByteBuffer} containing the received bytes, in read mode.
+     * @return Returns the next complete message, or null if more bytes are needed.
+     * @throws java.io.IOException If the stream contains a malformed or oversized header.
+     */
+    public Packet decode(ByteBuffer src) throws IOException
+    {
+        while(src.hasRemaining())
+        {
+            if(frame == null)
+            {
+                if(headerByte(src.get()) && header == 0) return finish();
+                continue;
+            }
+
+            int n = Math.min(header - filled, src.remaining());
+            src.get(frame, filled, n);
+            filled += n;
+            if(filled == header) return finish();
+        }
+        return null;
+    }
+
+    /**
+     * Reads the next complete message from the specified stream, blocking until it has arrived.
+     * If the read times out, the partial message is kept and the next call continues where this one left off.
+     * @param in The {@link java.io.InputStream} to read from. This should be buffered, since the header is read one byte at a time.
+     * @return Returns the next complete message.
+     * @throws java.io.IOException If the stream is closed, times out, or contains a malformed or oversized header.
+     */
+    public Packet read(InputStream in) throws IOException
+    {
+        while(frame == null)
+        {
+            int b = in.read();
+            if(b < 0) throw new EOFException();
+            headerByte(b);
+        }
+
+        while(filled < header)
+        {
+            int len = in.read(frame, filled, header - filled);
+            if(len < 0) throw new EOFException();
+            filled += len;
+        }
+        return finish();
+    }
+}
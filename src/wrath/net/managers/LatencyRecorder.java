@@ -0,0 +1,117 @@
+/**
+ * The MIT License (MIT)
+ * Wrath Net Engine Copyright (c) 2016 Trent Spears
+ */
+package wrath.net.managers;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import wrath.net.Metrics;
+
+/**
+ * Class to record times into a histogram that any number of threads can write to without contending.
+ * Every power of two is split into 8 buckets, so a bucket is never wider than an eighth of the times in it. Each bucket is a {@link java.util.concurrent.atomic.LongAdder}, created the first time a time falls into it.
+ * @author Trent Spears
+ */
+public class LatencyRecorder
+{
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40;
+
+    private final AtomicReferenceArray<LongAdder> buckets = new AtomicReferenceArray<>(bucketOf(Long.MAX_VALUE) + 1);
+    private final LongAdder count = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+    private final LongAdder total = new LongAdder();
+
+    /**
+     * Gets the bucket a time falls into. Times from 2^40ns (about 18 minutes) on share the last bucket.
+     */
+    private static int bucketOf(long nanos)
+    {
+        if(nanos < SUB_BUCKETS) return (int) Math.max(0, nanos);
+        int exp = Math.min(MAX_EXPONENT, 63 - Long.numberOfLeadingZeros(nanos));
+        if(exp == MAX_EXPONENT) return ((MAX_EXPONENT - SUB_BITS + 1) << SUB_BITS) | (SUB_BUCKETS - 1);
+        int sub = (int) (nanos >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return ((exp - SUB_BITS + 1) << SUB_BITS) | sub;
+    }
+
+    /**
+     * Gets the longest time that falls into a bucket.
+     */
+    private static long upperBound(int bucket)
+    {
+        if(bucket < SUB_BUCKETS) return bucket;
+        int exp = (bucket >>> SUB_BITS) + SUB_BITS - 1;
+        int sub = bucket & (SUB_BUCKETS - 1);
+        return ((long) (SUB_BUCKETS + sub + 1) << (exp - SUB_BITS)) - 1;
+    }
+
+    /**
+     * Records one time.
+     * @param nanos The time to record, in nanoseconds.
+     */
+    public void record(long nanos)
+    {
+        int b = bucketOf(nanos);
+        LongAdder a = buckets.get(b);
+        if(a == null)
+        {
+            buckets.compareAndSet(b, null, new LongAdder());
+            a = buckets.get(b);
+        }
+        a.increment();
+        count.increment();
+        total.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    /**
+     * Sets the histogram back to empty.
+     */
+    public void reset()
+    {
+        for(int i = 0; i < buckets.length(); i++)
+        {
+            LongAdder a = buckets.get(i);
+            if(a != null) a.reset();
+        }
+        count.reset();
+        total.reset();
+        max.reset();
+    }
+
+    /**
+     * Takes a snapshot of the histogram.
+     * @return Returns a {@link wrath.net.Metrics.Latency} snapshot of the recorded times.
+     */
+    public Metrics.Latency snapshot()
+    {
+        long[] counts = new long[buckets.length()];
+        long n = 0;
+        for(int i = 0; i < counts.length; i++)
+        {
+            LongAdder a = buckets.get(i);
+            if(a != null) n += counts[i] = a.sum();
+        }
+        if(n == 0) return Metrics.Latency.EMPTY;
+        long m = max.get();
+        return new Metrics.Latency(n, total.sum() / Math.max(1, count.sum()), percentile(counts, n, 0.5, m), percentile(counts, n, 0.9, m), percentile(counts, n, 0.99, m), percentile(counts, n, 0.999, m), m);
+    }
+
+    /**
+     * Finds the bucket holding the specified percentile, and returns its upper bound.
+     */
+    private static long percentile(long[] counts, long n, double p, long max)
+    {
+        long rank = (long) Math.ceil(p * n);
+        long seen = 0;
+        for(int i = 0; i < counts.length; i++)
+        {
+            seen += counts[i];
+            if(seen >= rank) return Math.min(upperBound(i), max);
+        }
+        return max;
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * The MIT License (MIT)
+ * Wrath Net Engine Copyright (c) 2016 Trent Spears
+ */
+package wrath.net.managers;
+
+import java.util.concurrent.atomic.LongAdder;
+import wrath.net.Metrics;
+
+/**
+ * Class to collect the live statistics behind a {@link wrath.net.Metrics} snapshot.
+ * Every counter is a {@link java.util.concurrent.atomic.LongAdder}, so the receiving, execution and sending threads can all update them without contending; only taking a snapshot sums them up.
+ * @author Trent Spears
+ */
+public class MetricsRecorder
+{
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LatencyRecorder decodeTime;
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder packetsReceived = new LongAdder();
+    private final LongAdder packetsSent = new LongAdder();
+    private final LatencyRecorder receiveTime;
+    private final LongAdder sendFailures = new LongAdder();
+
+    /**
+     * Constructor.
+     * @param latencies If true, the decode and onReceive() times are recorded as well. Otherwise only the counters are kept.
+     */
+    public MetricsRecorder(boolean latencies)
+    {
+        this.decodeTime = latencies ? new LatencyRecorder() : null;
+        this.receiveTime = latencies ? new LatencyRecorder() : null;
+    }
+
+    /**
+     * Counts one packet that was dropped for a reason the overflow counters do not track, such as failing to decode.
+     */
+    public void dropped()
+    {
+        dropped.increment();
+    }
+
+    /**
+     * Gets the histogram of decode times.
+     * @return Returns the {@link wrath.net.managers.LatencyRecorder} of decode times, or null if latencies are not recorded.
+     */
+    public LatencyRecorder getDecodeTime()
+    {
+        return decodeTime;
+    }
+
+    /**
+     * Gets the histogram of onReceive() times.
+     * @return Returns the {@link wrath.net.managers.LatencyRecorder} of onReceive() times, or null if latencies are not recorded.
+     */
+    public LatencyRecorder getReceiveTime()
+    {
+        return receiveTime;
+    }
+
+    /**
+     * Counts one received packet.
+     * @param bytes The size of the packet as it was received.
+     */
+    public void received(int bytes)
+    {
+        packetsReceived.increment();
+        bytesReceived.add(bytes);
+    }
+
+    /**
+     * Sets every counter and histogram back to zero.
+     */
+    public void reset()
+    {
+        bytesReceived.reset();
+        bytesSent.reset();
+        dropped.reset();
+        packetsReceived.reset();
+        packetsSent.reset();
+        sendFailures.reset();
+        if(decodeTime != null) decodeTime.reset();
+        if(receiveTime != null) receiveTime.reset();
+    }
+
+    /**
+     * Counts one failure to write data to a socket.
+     */
+    public void sendFailed()
+    {
+        sendFailures.increment();
+    }
+
+    /**
+     * Counts sent packets.
+     * @param bytes The size of each packet as it was sent.
+     * @param packets The number of packets sent.
+     */
+    public void sent(int bytes, int packets)
+    {
+        packetsSent.add(packets);
+        bytesSent.add((long) bytes * packets);
+    }
+
+    /**
+     * Takes a snapshot of the statistics.
+     * @param overflowDrops The number of packets dropped because a queue was full, as counted by the {@link wrath.net.managers.OverflowCounters}.
+     * @param queueDepth The number of received events waiting to be processed.
+     * @return Returns a {@link wrath.net.Metrics} snapshot.
+     */
+    public Metrics snapshot(long overflowDrops, int queueDepth)
+    {
+        return new Metrics(bytesReceived.sum(), bytesSent.sum(), packetsReceived.sum(), packetsSent.sum(), dropped.sum() + overflowDrops, sendFailures.sum(), queueDepth, decodeTime == null ? Metrics.Latency.EMPTY : decodeTime.snapshot(), receiveTime == null ? Metrics.Latency.EMPTY : receiveTime.snapshot());
+    }
+}
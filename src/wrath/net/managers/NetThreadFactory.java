@@ -0,0 +1,131 @@
+/**
+ * The MIT License (MIT)
+ * Wrath Net Engine Copyright (c) 2016 Trent Spears
+ */
+package wrath.net.managers;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import wrath.util.Config;
+
+/**
+ * Class to create the per-connection and execution threads of the managers.
+ * Threads can either be normal platform threads, or virtual threads when running on a JDK that supports them (21 and newer).
+ * Virtual threads let the blocking I/O code keep one thread per connection for tens of thousands of connections.
+ * @author Trent Spears
+ */
+public class NetThreadFactory implements ThreadFactory
+{
+    /**
+     * Creates normal platform threads.
+     */
+    public static final NetThreadFactory PLATFORM = new NetThreadFactory(false);
+    /**
+     * Creates virtual threads, or platform threads if the JDK does not support virtual threads.
+     */
+    public static final NetThreadFactory VIRTUAL = new NetThreadFactory(true);
+
+    private static final ThreadFactory VIRTUAL_FACTORY = lookupVirtualFactory();
+    private static final Method IS_VIRTUAL = lookupIsVirtual();
+    private static boolean warned = false;
+
+    private final boolean virtual;
+
+    private NetThreadFactory(boolean virtual)
+    {
+        this.virtual = virtual;
+    }
+
+    /**
+     * Gets the {@link wrath.net.managers.NetThreadFactory} named by the "ThreadMode" option of the specified {@link wrath.util.Config}.
+     * Possible values are "platform" and "virtual". Defaults to "platform".
+     * @param config The {@link wrath.util.Config} to read the option from.
+     * @return Returns the {@link wrath.net.managers.NetThreadFactory} named by the config.
+     */
+    public static NetThreadFactory fromConfig(Config config)
+    {
+        String name = config.getString("ThreadMode", "platform");
+        if("virtual".equalsIgnoreCase(name)) return VIRTUAL;
+        else if(!"platform".equalsIgnoreCase(name)) System.err.println("] WARNING: Unknown ThreadMode '" + name + "', using 'platform'.");
+        return PLATFORM;
+    }
+
+    /**
+     * Checks if the running JDK supports virtual threads.
+     * @return Returns true if the running JDK supports virtual threads. Otherwise false.
+     */
+    public static boolean isVirtualThreadSupported()
+    {
+        return VIRTUAL_FACTORY != null;
+    }
+
+    /**
+     * Checks if the specified thread is a virtual thread.
+     * @param t The {@link java.lang.Thread} to check.
+     * @return Returns true if the thread is a virtual thread. Otherwise false.
+     */
+    public static boolean isVirtualThread(Thread t)
+    {
+        if(IS_VIRTUAL == null) return false;
+        try
+        {
+            return (Boolean) IS_VIRTUAL.invoke(t);
+        }
+        catch(ReflectiveOperationException e)
+        {
+            return false;
+        }
+    }
+    
+    /**
+     * Checks if this factory creates virtual threads.
+     * @return Returns true if this factory creates virtual threads. Otherwise false.
+     */
+    public boolean isVirtual()
+    {
+        return virtual && VIRTUAL_FACTORY != null;
+    }
+
+    /**
+     * Looks up the virtual thread factory through reflection, so the engine still runs on older JDKs.
+     * @return Returns the virtual thread factory, or null if the JDK does not support virtual threads.
+     */
+    private static ThreadFactory lookupVirtualFactory()
+    {
+        try
+        {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        }
+        catch(ReflectiveOperationException | RuntimeException e)
+        {
+            return null;
+        }
+    }
+
+    private static Method lookupIsVirtual()
+    {
+        try
+        {
+            return Thread.class.getMethod("isVirtual");
+        }
+        catch(ReflectiveOperationException | RuntimeException e)
+        {
+            return null;
+        }
+    }
+
+    @Override
+    public Thread newThread(Runnable r)
+    {
+        if(!virtual) return new Thread(r);
+        if(VIRTUAL_FACTORY != null) return VIRTUAL_FACTORY.newThread(r);
+
+        if(!warned)
+        {
+            warned = true;
+            System.err.println("] WARNING: Virtual threads are not supported by this JDK, using platform threads.");
+        }
+        return new Thread(r);
+    }
+}
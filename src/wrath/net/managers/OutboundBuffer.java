@@ -0,0 +1,306 @@
+/**
+ * The MIT License (MIT)
+ * Wrath Net Engine Copyright (c) 2016 Trent Spears
+ */
+package wrath.net.managers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.Arrays;
+import wrath.net.BufferPool;
+import wrath.net.PooledBuffer;
+
+/**
+ * Class to hold the framed messages waiting to be written to a non-blocking TCP channel.
+ * Messages are copied back to back into a list of pooled chunks, and the whole list is handed to the channel with one gathering write.
+ * A broadcast payload is not copied; the buffer only holds a reference to it between the headers around it.
+ * The buffer remembers where each message ends, so messages that have not started to be written can be discarded without corrupting the stream.
+ * This class is not thread safe; the owning connection must synchronize access to it.
+ * @author Trent Spears
+ */
+public class OutboundBuffer
+{
+    private final int chunkSize;
+    private final boolean pooled;
+    private PooledBuffer[] chunks = new PooledBuffer[8];
+    private ByteBuffer[] views = new ByteBuffer[8];
+    private int count = 0;
+    private long appended = 0;
+    private long written = 0;
+    
+    // Stream offsets where the queued messages end, oldest first, and where the oldest one starts.
+    private long[] ends = new long[16];
+    private int endHead = 0;
+    private int endCount = 0;
+    private long frontStart = 0;
+    private PooledBuffer tailChunk = null;
+    private ByteBuffer tail = null;
+    private boolean tailOpen = false;
+    
+    private final ByteBuffer header = ByteBuffer.allocate(FrameDecoder.MAX_HEADER_LENGTH);
+    private final ByteBuffer[] frame = new ByteBuffer[2];
+    
+    /**
+     * Constructor.
+     * @param chunkSize The size of each chunk messages are copied into. Larger messages get a chunk of their own.
+     * @param pooled If true, chunks are taken from and returned to the {@link wrath.net.BufferPool}.
+     */
+    public OutboundBuffer(int chunkSize, boolean pooled)
+    {
+        this.chunkSize = Math.max(64, chunkSize);
+        this.pooled = pooled;
+    }
+    
+    /**
+     * Copies a message and its length header to the end of the buffer.
+     * @param data The {@link java.nio.ByteBuffer} holding the message between its position and limit. Its position is not changed.
+     */
+    public void add(ByteBuffer data)
+    {
+        long start = appended;
+        int length = data.remaining();
+        reserve(FrameDecoder.headerLength(length) + length);
+        FrameDecoder.writeHeader(length, tail);
+        tail.put(data.duplicate());
+        views[count - 1].limit(tail.position());
+        mark(start);
+    }
+    
+    /**
+     * Adds a message whose payload is shared with other connections. Only its length header is copied.
+     * @param data The {@link wrath.net.PooledBuffer} holding the message from index 0. A reference is held until the message has been written. Its content must not change after this is called.
+     * @param length The length of the message.
+     */
+    public void add(PooledBuffer data, int length)
+    {
+        long start = appended;
+        reserve(FrameDecoder.headerLength(length));
+        FrameDecoder.writeHeader(length, tail);
+        views[count - 1].limit(tail.position());
+        
+        push(data.retain(), ByteBuffer.wrap(data.array(), 0, length));
+        appended += length;
+        tailOpen = false;
+        mark(start);
+    }
+    
+    /**
+     * Copies raw bytes to the end of the buffer.
+     */
+    private void append(ByteBuffer src)
+    {
+        reserve(src.remaining());
+        tail.put(src);
+        views[count - 1].limit(tail.position());
+    }
+    
+    /**
+     * Releases every chunk, discarding any data that was not written.
+     */
+    public void clear()
+    {
+        for(int i = 0; i < count; i++)
+        {
+            chunks[i].release();
+            chunks[i] = null;
+            views[i] = null;
+        }
+        if(tailChunk != null) tailChunk.release();
+        count = 0;
+        appended = 0;
+        written = 0;
+        endCount = 0;
+        frontStart = 0;
+        tailChunk = null;
+        tail = null;
+        tailOpen = false;
+    }
+    
+    /**
+     * Discards every message that has not started to be written, so newer data can take their place.
+     * A message that was partly written is kept, since cutting it short would corrupt the stream.
+     * @return Returns the number of messages discarded.
+     */
+    public int discardQueued()
+    {
+        if(endCount == 0) return 0;
+        int kept = frontStart < written ? 1 : 0;
+        int discarded = endCount - kept;
+        if(discarded == 0) return 0;
+        long keep = kept == 1 ? ends[endHead] : written;
+        
+        // Cut the list of buffers after the last byte kept.
+        long left = keep - written;
+        int i = 0;
+        while(i < count && left > 0)
+        {
+            int r = views[i].remaining();
+            if(r > left) views[i].limit(views[i].position() + (int) left);
+            left -= Math.min(r, left);
+            i++;
+        }
+        for(int j = i; j < count; j++)
+        {
+            chunks[j].release();
+            chunks[j] = null;
+            views[j] = null;
+        }
+        count = i;
+        
+        // The rest of the chunk being written to now lies after the cut, so the next message starts a new one.
+        if(tailChunk != null) tailChunk.release();
+        tailChunk = null;
+        tail = null;
+        tailOpen = false;
+        
+        appended = keep;
+        endCount = kept;
+        return discarded;
+    }
+    
+    /**
+     * Checks if there is any data waiting to be written.
+     * @return Returns true if there is no data waiting to be written.
+     */
+    public boolean isEmpty()
+    {
+        return count == 0;
+    }
+    
+    /**
+     * Gets the number of bytes waiting to be written.
+     * @return Returns the number of bytes waiting to be written.
+     */
+    public long pending()
+    {
+        return appended - written;
+    }
+    
+    /**
+     * Remembers that a message starting at the specified stream offset ends where the buffer now ends.
+     */
+    private void mark(long start)
+    {
+        if(endCount == 0) frontStart = start;
+        if(endCount == ends.length)
+        {
+            // Unroll the ring into an array twice the size.
+            long[] e = new long[endCount * 2];
+            for(int i = 0; i < endCount; i++) e[i] = ends[(endHead + i) % ends.length];
+            ends = e;
+            endHead = 0;
+        }
+        ends[(endHead + endCount++) % ends.length] = appended;
+    }
+    
+    /**
+     * Adds a buffer to the end of the list.
+     */
+    private void push(PooledBuffer buf, ByteBuffer view)
+    {
+        if(count == chunks.length)
+        {
+            chunks = Arrays.copyOf(chunks, count * 2);
+            views = Arrays.copyOf(views, count * 2);
+        }
+        chunks[count] = buf;
+        views[count++] = view;
+    }
+    
+    /**
+     * Makes sure the last entry of the list is the chunk being written to, and that it has room for the specified number of bytes.
+     * The chunk holds one reference of its own, and each entry of the list over it holds another.
+     */
+    private void reserve(int length)
+    {
+        appended += length;
+        if(tail == null || tail.remaining() < length)
+        {
+            if(tailChunk != null) tailChunk.release();
+            tailChunk = BufferPool.allocate(Math.max(chunkSize, length), pooled);
+            tail = ByteBuffer.wrap(tailChunk.array());
+            tailOpen = false;
+        }
+        if(!tailOpen)
+        {
+            // A shared payload was added since the last write to the chunk, so the rest of the chunk needs a new entry after it.
+            push(tailChunk.retain(), ByteBuffer.wrap(tailChunk.array(), tail.position(), 0));
+            tailOpen = true;
+        }
+    }
+    
+    /**
+     * Sends a message, writing it straight from the caller's buffer if nothing else is waiting.
+     * The header and the message are passed to the channel as two buffers of one gathering write, so they are never concatenated.
+     * Whatever the channel does not take is copied into the buffer, so the caller may re-use its buffer once this returns.
+     * @param channel The {@link java.nio.channels.GatheringByteChannel} to write to. Must be in non-blocking mode.
+     * @param data The {@link java.nio.ByteBuffer} holding the message between its position and limit. Its position is advanced past the bytes written.
+     * @throws IOException Thrown if the channel could not be written to.
+     */
+    public void write(GatheringByteChannel channel, ByteBuffer data) throws IOException
+    {
+        if(count > 0)
+        {
+            add(data);
+            writeTo(channel);
+            return;
+        }
+        
+        header.clear();
+        FrameDecoder.writeHeader(data.remaining(), header);
+        header.flip();
+        frame[0] = header;
+        frame[1] = data;
+        long sent = 0;
+        try
+        {
+            sent = channel.write(frame);
+        }
+        finally
+        {
+            frame[1] = null;
+            long start = appended;
+            if(header.hasRemaining()) append(header);
+            if(data.hasRemaining()) append(data);
+            // If part of the message went out already, the rest counts as started.
+            if(appended != start) mark(sent > 0 ? start - 1 : start);
+        }
+    }
+    
+    /**
+     * Writes as much of the buffer as the channel will accept without blocking, using gathering writes over all chunks.
+     * Chunks that were written completely are released.
+     * @param channel The {@link java.nio.channels.GatheringByteChannel} to write to. Must be in non-blocking mode.
+     * @throws IOException Thrown if the channel could not be written to.
+     */
+    public void writeTo(GatheringByteChannel channel) throws IOException
+    {
+        while(count > 0)
+        {
+            written += channel.write(views, 0, count);
+            while(endCount > 0 && ends[endHead] <= written)
+            {
+                frontStart = ends[endHead];
+                endHead = (endHead + 1) % ends.length;
+                endCount--;
+            }
+            
+            int done = 0;
+            while(done < count && !views[done].hasRemaining()) done++;
+            if(done == 0) return;
+            if(done == count)
+            {
+                clear();
+                return;
+            }
+            
+            for(int i = 0; i < done; i++) chunks[i].release();
+            System.arraycopy(chunks, done, chunks, 0, count - done);
+            System.arraycopy(views, done, views, 0, count - done);
+            Arrays.fill(chunks, count - done, count, null);
+            Arrays.fill(views, count - done, count, null);
+            count -= done;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * The MIT License (MIT)
+ * Wrath Net Engine Copyright (c) 2016 Trent Spears
+ */
+package wrath.net.managers;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Class to count how often each {@link wrath.net.managers.OverflowPolicy} had to be applied to a set of queues.
+ * The counters are striped, so threads that overflow at the same time do not contend on them.
+ * @author Trent Spears
+ */
+public class OverflowCounters
+{
+    private final LongAdder[] counts = new LongAdder[OverflowPolicy.values().length];
+
+    /**
+     * Constructor.
+     */
+    public OverflowCounters()
+    {
+        for(int i = 0; i < counts.length; i++) counts[i] = new LongAdder();
+    }
+
+    /**
+     * Gets how often the specified policy was applied since the counters were created or last reset.
+     * For {@link wrath.net.managers.OverflowPolicy#BLOCK} this is the number of times a thread had to wait, and for {@link wrath.net.managers.OverflowPolicy#DISCONNECT_CLIENT} the number of disconnects.
+     * @param policy The {@link wrath.net.managers.OverflowPolicy} to get the count of.
+     * @return Returns how often the policy was applied.
+     */
+    public long get(OverflowPolicy policy)
+    {
+        return counts[policy.ordinal()].sum();
+    }
+
+    /**
+     * Gets how many messages were lost, that is how often any policy other than {@link wrath.net.managers.OverflowPolicy#BLOCK} was applied.
+     * @return Returns the number of dropped messages.
+     */
+    public long dropped()
+    {
+        return total() - get(OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Counts one application of the specified policy.
+     * @param policy The {@link wrath.net.managers.OverflowPolicy} that was applied.
+     */
+    public void increment(OverflowPolicy policy)
+    {
+        counts[policy.ordinal()].increment();
+    }
+
+    /**
+     * Sets every counter back to zero.
+     */
+    public void reset()
+    {
+        for(LongAdder a : counts) a.reset();
+    }
+
+    /**
+     * Gets the sum of all counters.
+     * @return Returns how often any policy was applied.
+     */
+    public long total()
+    {
+        long r = 0;
+        for(LongAdder a : counts) r += a.sum();
+        return r;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder b = new StringBuilder("[");
+        for(OverflowPolicy p : OverflowPolicy.values())
+        {
+            if(b.length() > 1) b.append(", ");
+            b.append(p).append('=').append(get(p));
+        }
+        return b.append(']').toString();
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * The MIT License (MIT)
+ * Wrath Net Engine Copyright (c) 2016 Trent Spears
+ */
+package wrath.net.managers;
+
+import wrath.util.Config;
+
+/**
+ * Enumerator describing what happens to a message that does not fit into a full queue.
+ * Received messages wait in the execution queue ("ExecQueueCapacity"), and each Server Client's outgoing messages wait in its outbound queue ("OutboundQueueCapacity" messages, or "OutboundQueueBytes" bytes on non-blocking TCP).
+ * Every time a policy is applied it is counted in the manager's {@link wrath.net.managers.OverflowCounters}.
+ * @author Trent Spears
+ */
+public enum OverflowPolicy
+{
+    /**
+     * The thread adding the message waits until there is room. Nothing is lost, but a slow consumer slows the producer down.
+     * This was the only behaviour before overflow policies existed.
+     * On a Server's outbound queues, a thread waits at most "OutboundBlockTimeout" milliseconds (defaults to 1000) before the Client is disconnected, and the Server's own threads never wait at all; they disconnect the Client right away.
+     */
+    BLOCK,
+    /**
+     * The message being added is dropped.
+     */
+    DROP_NEWEST,
+    /**
+     * Messages waiting in the queue are dropped, oldest first, to make room for the one being added.
+     * Suits data where only the latest state matters.
+     */
+    DROP_OLDEST,
+    /**
+     * The message being added is dropped and the Client is disconnected. On a Client, this disconnects it from the Server.
+     */
+    DISCONNECT_CLIENT;
+
+    /**
+     * Gets the {@link wrath.net.managers.OverflowPolicy} named by an option of the specified {@link wrath.util.Config}.
+     * Possible values are "block", "drop-newest", "drop-oldest" and "disconnect-client". Defaults to "block".
+     * @param config The {@link wrath.util.Config} to read the option from.
+     * @param option The name of the option, such as "InboundOverflowPolicy" or "OutboundOverflowPolicy".
+     * @return Returns the {@link wrath.net.managers.OverflowPolicy} named by the config.
+     */
+    public static OverflowPolicy fromConfig(Config config, String option)
+    {
+        return fromConfig(config, option, BLOCK);
+    }
+    
+    /**
+     * Gets the {@link wrath.net.managers.OverflowPolicy} named by an option of the specified {@link wrath.util.Config}.
+     * Possible values are "block", "drop-newest", "drop-oldest" and "disconnect-client".
+     * @param config The {@link wrath.util.Config} to read the option from.
+     * @param option The name of the option, such as "InboundOverflowPolicy" or "OutboundOverflowPolicy".
+     * @param defaultPolicy The {@link wrath.net.managers.OverflowPolicy} to use if the option is not set or not valid.
+     * @return Returns the {@link wrath.net.managers.OverflowPolicy} named by the config.
+     */
+    public static OverflowPolicy fromConfig(Config config, String option, OverflowPolicy defaultPolicy)
+    {
+        String defaultName = defaultPolicy.name().toLowerCase().replace('_', '-');
+        String name = config.getString(option, defaultName);
+        if("block".equalsIgnoreCase(name)) return BLOCK;
+        else if("drop-newest".equalsIgnoreCase(name)) return DROP_NEWEST;
+        else if("drop-oldest".equalsIgnoreCase(name)) return DROP_OLDEST;
+        else if("disconnect-client".equalsIgnoreCase(name)) return DISCONNECT_CLIENT;
+        System.err.println("] WARNING: Unknown " + option + " '" + name + "', using '" + defaultName + "'.");
+        return defaultPolicy;
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * The MIT License (MIT)
+ * Wrath Net Engine Copyright (c) 2016 Trent Spears
+ */
+package wrath.net.managers;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import wrath.net.BufferPool;
+import wrath.net.Packet;
+import wrath.net.PooledBuffer;
+
+/**
+ * Class to encrypt and decrypt packet data with AES-GCM, using {@link javax.crypto.Cipher} instances cached per thread.
+ * Every encrypted packet is laid out as a 12 byte nonce, the ciphertext, and a 16 byte authentication tag, so a packet that was changed or cut short on the way is rejected instead of being decrypted into garbage.
+ * A nonce is the thread's random 8 byte prefix followed by a 4 byte counter, so no two packets encrypted with the same key share one; the prefix is drawn again whenever the counter wraps.
+ * Output goes straight into {@link wrath.net.BufferPool} buffers, so no intermediate arrays are created for a packet.
+ * @author Trent Spears
+ */
+public class PacketCipher
+{
+    private static final int NONCE_SIZE = 12;
+    private static final int TAG_SIZE = 16;
+    /**
+     * The number of bytes encryption adds to a packet.
+     */
+    public static final int OVERHEAD = NONCE_SIZE + TAG_SIZE;
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final ThreadLocal<PacketCipher> LOCAL = ThreadLocal.withInitial(PacketCipher::new);
+
+    private int counter = 0;
+    private Cipher decryptor = null;
+    private Cipher encryptor = null;
+    private final byte[] nonce = new byte[NONCE_SIZE];
+    private final byte[] receivedNonce = new byte[NONCE_SIZE];
+
+    private PacketCipher()
+    {
+        newPrefix();
+    }
+
+    /**
+     * Encrypts data with the calling thread's cipher.
+     * @param data The {@link java.nio.ByteBuffer} holding the data between its position and limit. Its position is not changed.
+     * @param key The AES {@link javax.crypto.spec.SecretKeySpec} to encrypt with.
+     * @param pooled If true, the data is encrypted into a buffer borrowed from the {@link wrath.net.BufferPool}.
+     * @return Returns a {@link wrath.net.Packet} holding the nonce, ciphertext and tag, which must be released once sent, or null if the key cannot be used.
+     */
+    public static Packet encrypt(ByteBuffer data, SecretKeySpec key, boolean pooled)
+    {
+        return LOCAL.get().seal(data.duplicate(), key, pooled);
+    }
+
+    /**
+     * Decrypts and authenticates a received packet with the calling thread's cipher.
+     * @param packet The received {@link wrath.net.Packet}, starting with the nonce.
+     * @param key The AES {@link javax.crypto.spec.SecretKeySpec} the data was encrypted with.
+     * @param pooled If true, the data is decrypted into a buffer borrowed from the {@link wrath.net.BufferPool}.
+     * @return Returns a {@link wrath.net.Packet} holding the decrypted data, or null if the packet is not authentic or the key cannot be used.
+     */
+    public static Packet decrypt(Packet packet, SecretKeySpec key, boolean pooled)
+    {
+        if(packet.getLength() < OVERHEAD) return null;
+        return LOCAL.get().open(packet.getBuffer(), key, pooled);
+    }
+
+    /**
+     * Draws a new random nonce prefix and restarts the counter.
+     */
+    private void newPrefix()
+    {
+        byte[] prefix = new byte[8];
+        RANDOM.nextBytes(prefix);
+        System.arraycopy(prefix, 0, nonce, 0, 8);
+        counter = 0;
+    }
+
+    /**
+     * Decrypts into a new Packet.
+     */
+    private Packet open(ByteBuffer data, SecretKeySpec key, boolean pooled)
+    {
+        PooledBuffer b = null;
+        try
+        {
+            if(decryptor == null) decryptor = Cipher.getInstance(TRANSFORMATION);
+            data.get(receivedNonce);
+            decryptor.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_SIZE * 8, receivedNonce));
+            int length = decryptor.getOutputSize(data.remaining());
+            b = BufferPool.allocate(Math.max(1, length), pooled);
+            int n = decryptor.doFinal(data, ByteBuffer.wrap(b.array()));
+            return new Packet(b, n);
+        }
+        catch(GeneralSecurityException | IllegalStateException e)
+        {
+            if(b != null) b.release();
+            return null;
+        }
+    }
+
+    /**
+     * Encrypts into a new Packet, behind a fresh nonce.
+     */
+    private Packet seal(ByteBuffer data, SecretKeySpec key, boolean pooled)
+    {
+        if(++counter == 0) newPrefix();
+        nonce[8] = (byte) (counter >>> 24);
+        nonce[9] = (byte) (counter >>> 16);
+        nonce[10] = (byte) (counter >>> 8);
+        nonce[11] = (byte) counter;
+
+        PooledBuffer b = BufferPool.allocate(data.remaining() + OVERHEAD, pooled);
+        try
+        {
+            if(encryptor == null) encryptor = Cipher.getInstance(TRANSFORMATION);
+            encryptor.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_SIZE * 8, nonce));
+            System.arraycopy(nonce, 0, b.array(), 0, NONCE_SIZE);
+            int n = encryptor.doFinal(data, ByteBuffer.wrap(b.array(), NONCE_SIZE, b.capacity() - NONCE_SIZE));
+            return new Packet(b, NONCE_SIZE + n);
+        }
+        catch(GeneralSecurityException | IllegalStateException e)
+        {
+            b.release();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,285 @@
+/**
+ * The MIT License (MIT)
+ * Wrath Net Engine Copyright (c) 2016 Trent Spears
+ */
+package wrath.net.managers;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import wrath.net.BufferPool;
+import wrath.net.Packet;
+import wrath.net.PooledBuffer;
+import wrath.util.Compression;
+
+/**
+ * Class to compress and decompress packet data with long-lived {@link java.util.zip.Deflater} and {@link java.util.zip.Inflater} contexts, one set per thread.
+ * Setting up a compressor costs far more than compressing a small packet, so the contexts and the output array are reset and reused instead of being created for every packet.
+ * The data is in the same formats {@link wrath.util.Compression} uses: zlib for DEFLATE and gzip for GZIP. Formats the JDK has no compressor for, such as BZIP2, are handed to {@link wrath.util.Compression}.
+ * Every packet starts with a flag byte telling whether the rest of it is compressed. Packets smaller than the threshold, and packets that compression would not make smaller, are sent as they are, so small packets cost no compression CPU on either side.
+ * @author Trent Spears
+ */
+public class PacketCompressor
+{
+    /**
+     * Flag byte of a packet whose data follows as it is.
+     */
+    public static final byte STORED = 0;
+    /**
+     * Flag byte of a packet whose data follows compressed.
+     */
+    public static final byte COMPRESSED = 1;
+    
+    private static final int GZIP_HEADER_SIZE = 10;
+    private static final int GZIP_TRAILER_SIZE = 8;
+    private static final int MAX_RETAINED_SIZE = 65536;
+    private static final ThreadLocal<PacketCompressor> LOCAL = ThreadLocal.withInitial(PacketCompressor::new);
+
+    private final CRC32 crc = new CRC32();
+    private Deflater deflater = null;
+    private Deflater gzipDeflater = null;
+    private Inflater inflater = null;
+    private Inflater gzipInflater = null;
+    private byte[] out = new byte[1024];
+
+    private PacketCompressor() {}
+
+    /**
+     * Compresses data with the calling thread's contexts if it is large enough, and prefixes it with the matching flag byte.
+     * Compression is given up as soon as its output reaches the size of the data, so incompressible data costs little more than a copy.
+     * @param data The {@link java.nio.ByteBuffer} holding the data between its position and limit. Its position is not changed.
+     * @param format The {@link wrath.util.Compression.CompressionType} to compress with.
+     * @param threshold The smallest number of bytes that is worth compressing.
+     * @return Returns the flag byte followed by the data, compressed or not, in an array of exactly their size.
+     */
+    public static byte[] compress(ByteBuffer data, Compression.CompressionType format, int threshold)
+    {
+        int length = data.remaining();
+        if(length >= threshold)
+        {
+            if(format == Compression.CompressionType.DEFLATE || format == Compression.CompressionType.GZIP)
+            {
+                byte[] r = LOCAL.get().deflate(data, format == Compression.CompressionType.GZIP);
+                if(r != null) return r;
+            }
+            else
+            {
+                byte[] r = new byte[length];
+                data.duplicate().get(r);
+                r = Compression.compressData(r, format);
+                if(r != null && r.length < length)
+                {
+                    byte[] f = new byte[r.length + 1];
+                    f[0] = COMPRESSED;
+                    System.arraycopy(r, 0, f, 1, r.length);
+                    return f;
+                }
+            }
+        }
+        byte[] r = new byte[length + 1];
+        r[0] = STORED;
+        data.duplicate().get(r, 1, length);
+        return r;
+    }
+
+    /**
+     * Reads the flag byte of a received packet and decompresses the rest of it if needed, with the calling thread's contexts.
+     * @param packet The received {@link wrath.net.Packet}, starting with the flag byte.
+     * @param format The {@link wrath.util.Compression.CompressionType} the data was compressed with.
+     * @param pooled If true, compressed data is decompressed into a buffer borrowed from the {@link wrath.net.BufferPool}.
+     * @param maxSize The largest number of bytes the data may decompress to.
+     * @return Returns a {@link wrath.net.Packet} holding the data, or null if the data could not be read or decompresses to more than maxSize bytes. Data that was not compressed is returned as a view of the received Packet, and is only valid for as long as it is.
+     */
+    public static Packet decode(Packet packet, Compression.CompressionType format, boolean pooled, int maxSize)
+    {
+        int length = packet.getLength();
+        if(length == 0) return null;
+        byte flag = packet.getByte(0);
+        if(flag == STORED) return packet.slice(1, length - 1);
+        else if(flag != COMPRESSED) return null;
+        ByteBuffer data = packet.getBuffer();
+        data.position(data.position() + 1);
+        return decompress(data, format, pooled, maxSize);
+    }
+
+    /**
+     * Decompresses data with the calling thread's contexts.
+     * @param data The {@link java.nio.ByteBuffer} holding the compressed data between its position and limit. Its position is not changed.
+     * @param format The {@link wrath.util.Compression.CompressionType} the data was compressed with.
+     * @param pooled If true, the data is decompressed into a buffer borrowed from the {@link wrath.net.BufferPool}.
+     * @param maxSize The largest number of bytes the data may decompress to. A few bytes of compressed data can decompress to gigabytes, so this should be no larger than the biggest packet expected.
+     * @return Returns a {@link wrath.net.Packet} holding the decompressed data, or null if the data could not be decompressed or decompresses to more than maxSize bytes.
+     */
+    public static Packet decompress(ByteBuffer data, Compression.CompressionType format, boolean pooled, int maxSize)
+    {
+        if(format == Compression.CompressionType.DEFLATE) return LOCAL.get().inflate(data.duplicate(), false, pooled, maxSize);
+        else if(format == Compression.CompressionType.GZIP) return LOCAL.get().inflate(data.duplicate(), true, pooled, maxSize);
+
+        // Formats decompressed by wrath.util.Compression can only be checked once they are done.
+        byte[] r = new byte[data.remaining()];
+        data.duplicate().get(r);
+        r = Compression.decompressData(r, format);
+        return r == null || r.length > maxSize ? null : new Packet(r);
+    }
+
+    /**
+     * Compresses data into the reusable output array, after the flag byte.
+     * @return Returns the flag byte and the compressed data, or null if the compressed data would not be smaller.
+     */
+    private byte[] deflate(ByteBuffer data, boolean gzip)
+    {
+        Deflater d;
+        if(gzip)
+        {
+            if(gzipDeflater == null) gzipDeflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            d = gzipDeflater;
+        }
+        else
+        {
+            if(deflater == null) deflater = new Deflater();
+            d = deflater;
+        }
+        d.reset();
+        d.setInput(data.duplicate());
+        d.finish();
+
+        // The output, flag byte included, must stay smaller than the flag byte and the data as they are.
+        int limit = data.remaining() - (gzip ? GZIP_TRAILER_SIZE : 0);
+        if(limit <= (gzip ? GZIP_HEADER_SIZE + 1 : 1)) return null;
+        int size = data.remaining();
+        byte[] o = out;
+        if(o.length < size)
+        {
+            o = new byte[Integer.highestOneBit(size) << 1];
+            // Keep the grown array for the next packet, unless one unusually large packet would make it huge.
+            if(o.length <= MAX_RETAINED_SIZE) out = o;
+        }
+        
+        o[0] = COMPRESSED;
+        int n = 1;
+        if(gzip)
+        {
+            o[1] = (byte) 0x1f;
+            o[2] = (byte) 0x8b;
+            o[3] = Deflater.DEFLATED;
+            Arrays.fill(o, 4, GZIP_HEADER_SIZE + 1, (byte) 0);
+            n = GZIP_HEADER_SIZE + 1;
+        }
+        while(!d.finished())
+        {
+            if(n >= limit) return null;
+            n += d.deflate(o, n, limit - n);
+        }
+        if(gzip)
+        {
+            crc.reset();
+            crc.update(data.duplicate());
+            ByteBuffer.wrap(o, n, GZIP_TRAILER_SIZE).order(ByteOrder.LITTLE_ENDIAN).putInt((int) crc.getValue()).putInt(data.remaining());
+            n += GZIP_TRAILER_SIZE;
+        }
+        return Arrays.copyOf(o, n);
+    }
+
+    /**
+     * Decompresses data into a new Packet, growing its buffer as needed up to maxSize bytes.
+     */
+    private Packet inflate(ByteBuffer data, boolean gzip, boolean pooled, int maxSize)
+    {
+        Inflater inf;
+        if(gzip)
+        {
+            if(gzipInflater == null) gzipInflater = new Inflater(true);
+            inf = gzipInflater;
+            if(!skipGzipHeader(data)) return null;
+        }
+        else
+        {
+            if(inflater == null) inflater = new Inflater();
+            inf = inflater;
+        }
+        inf.reset();
+        inf.setInput(data);
+
+        PooledBuffer b = BufferPool.allocate(Math.max(1, Math.min(maxSize, Math.max(64, data.remaining() * 4))), pooled);
+        int n = 0;
+        try
+        {
+            while(!inf.finished())
+            {
+                int limit = Math.min(b.capacity(), maxSize);
+                if(n == limit)
+                {
+                    // The data decompresses to more than is allowed, so it is dropped before it can use up the memory.
+                    if(limit == maxSize)
+                    {
+                        b.release();
+                        return null;
+                    }
+                    PooledBuffer g = BufferPool.allocate((int) Math.min((long) b.capacity() * 2, maxSize), pooled);
+                    System.arraycopy(b.array(), 0, g.array(), 0, n);
+                    b.release();
+                    b = g;
+                    limit = Math.min(b.capacity(), maxSize);
+                }
+                int r = inf.inflate(b.array(), n, limit - n);
+                // Truncated data
+                if(r == 0 && !inf.finished() && (inf.needsInput() || inf.needsDictionary()))
+                {
+                    b.release();
+                    return null;
+                }
+                n += r;
+            }
+            if(gzip)
+            {
+                // The Inflater stops at the trailer, which holds the checksum and size of the data.
+                crc.reset();
+                crc.update(b.array(), 0, n);
+                if(data.remaining() < GZIP_TRAILER_SIZE || data.order(ByteOrder.LITTLE_ENDIAN).getInt() != (int) crc.getValue() || data.getInt() != n)
+                {
+                    b.release();
+                    return null;
+                }
+            }
+        }
+        catch(DataFormatException e)
+        {
+            b.release();
+            return null;
+        }
+        return new Packet(b, n);
+    }
+
+    /**
+     * Moves the buffer past a gzip header, including any of its optional fields.
+     */
+    private static boolean skipGzipHeader(ByteBuffer data)
+    {
+        try
+        {
+            if(data.get() != (byte) 0x1f || data.get() != (byte) 0x8b || data.get() != Deflater.DEFLATED) return false;
+            int flags = data.get();
+            data.position(data.position() + 6);
+            // FEXTRA
+            if((flags & 4) != 0)
+            {
+                int len = (data.get() & 0xff) | (data.get() & 0xff) << 8;
+                data.position(data.position() + len);
+            }
+            // FNAME and FCOMMENT
+            if((flags & 8) != 0) while(data.get() != 0);
+            if((flags & 16) != 0) while(data.get() != 0);
+            // FHCRC
+            if((flags & 2) != 0) data.position(data.position() + 2);
+            return true;
+        }
+        catch(RuntimeException e)
+        {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * The MIT License (MIT)
+ * Wrath Net Engine Copyright (c) 2016 Trent Spears
+ */
+package wrath.net.managers;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * Bounded, lock-free, multi-producer single-consumer queue.
+ * All slots are created up front and re-used, so passing events through the queue does not allocate.
+ * Producers {@link #claim()} a slot, fill it in, then {@link #publish(long)} it.
+ * The consumer reads the oldest slot with {@link #peek()} and hands it back with {@link #advance()}.
+ * @param <E> The type of the slot objects.
+ * @author Trent Spears
+ */
+public class RingBuffer<E>
+{
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head = 0;
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final Object[] slots;
+    /**
+     * The consumer thread, while it is parked waiting for this queue. Used by {@link wrath.net.managers.WaitStrategy}.
+     */
+    volatile Thread waiter = null;
+
+    /**
+     * Constructor.
+     * @param capacity The maximum amount of slots in the queue. Rounded up to the next power of two.
+     * @param factory Used to create every slot object when the queue is created.
+     */
+    public RingBuffer(int capacity, Supplier<E> factory)
+    {
+        int cap = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = cap - 1;
+        this.sequences = new AtomicLongArray(cap);
+        this.slots = new Object[cap];
+        for(int i = 0; i < cap; i++)
+        {
+            sequences.set(i, i);
+            slots[i] = factory.get();
+        }
+    }
+
+    /**
+     * Moves the consumer on to the next slot, handing the current slot back to the producers.
+     * Must only be called by the consumer thread, after {@link #peek()} returned a slot.
+     */
+    public void advance()
+    {
+        sequences.lazySet((int) head & mask, head + mask + 1);
+        head++;
+    }
+
+    /**
+     * Gets the maximum amount of slots in the queue.
+     * @return Returns the maximum amount of slots in the queue.
+     */
+    public int capacity()
+    {
+        return mask + 1;
+    }
+
+    /**
+     * Claims a free slot for a producer.
+     * @return Returns the sequence of the claimed slot, or -1 if the queue is full.
+     */
+    public long claim()
+    {
+        while(true)
+        {
+            long pos = tail.get();
+            long dif = sequences.get((int) pos & mask) - pos;
+            if(dif == 0)
+            {
+                if(tail.compareAndSet(pos, pos + 1)) return pos;
+            }
+            else if(dif < 0) return -1;
+        }
+    }
+
+    /**
+     * Gets the slot object with the specified sequence.
+     * @param sequence The sequence returned by {@link #claim()}.
+     * @return Returns the slot object with the specified sequence.
+     */
+    @SuppressWarnings("unchecked")
+    public E get(long sequence)
+    {
+        return (E) slots[(int) sequence & mask];
+    }
+
+    /**
+     * Checks if there are no published slots waiting for the consumer.
+     * @return Returns true if there are no published slots waiting for the consumer.
+     */
+    public boolean isEmpty()
+    {
+        return sequences.get((int) head & mask) != head + 1;
+    }
+
+    /**
+     * Gets the oldest published slot without removing it.
+     * Must only be called by the consumer thread.
+     * @return Returns the oldest published slot, or null if the queue is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public E peek()
+    {
+        if(isEmpty()) return null;
+        return (E) slots[(int) head & mask];
+    }
+
+    /**
+     * Makes a claimed slot visible to the consumer.
+     * @param sequence The sequence returned by {@link #claim()}.
+     */
+    public void publish(long sequence)
+    {
+        sequences.set((int) sequence & mask, sequence + 1);
+    }
+
+    /**
+     * Gets the approximate amount of slots currently in use.
+     * @return Returns the approximate amount of slots currently in use.
+     */
+    public int size()
+    {
+        return (int) Math.max(0, Math.min(tail.get() - head, mask + 1));
+    }
+}
@@ -0,0 +1,531 @@
+/**
+ * The MIT License (MIT)
+ * Wrath Net Engine Copyright (c) 2016 Trent Spears
+ */
+package wrath.net.managers;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import wrath.net.BufferPool;
+import wrath.net.Packet;
+import wrath.net.PooledBuffer;
+import wrath.util.Config;
+
+/**
+ * Class to hold the reliability state of one RUDP connection: the send window, the receive window and the retransmission timer.
+ * Every datagram starts with a 13 byte header: the datagram type, its sequence number, and the cumulative and selective acknowledgements of the sender.
+ * Acknowledgements ride along on every data datagram; a separate ACK datagram is only sent when there has been no data to carry them for "RudpAckDelay" ms.
+ * Lost datagrams are resent after a timeout based on the measured round trip time (RFC 6298), or as soon as three later datagrams have been acknowledged.
+ * Each datagram is resent on its own, so one loss never holds back the rest of the window.
+ * Messages sent while the window is full wait in a queue and go out as soon as the peer acknowledges enough data.
+ * That queue holds up to "OutboundQueueCapacity" messages; beyond that, the {@link wrath.net.managers.OverflowPolicy} passed to {@link #send(java.nio.ByteBuffer, wrath.net.managers.OverflowPolicy, wrath.net.managers.OverflowCounters)} is applied.
+ * @author Trent Spears
+ */
+public abstract class RudpSession
+{
+    /**
+     * The number of bytes in front of every RUDP datagram.
+     */
+    public static final int HEADER_LENGTH = 13;
+
+    private static final byte TYPE_DATA = 1;
+    private static final byte TYPE_ACK = 2;
+    private static final int FAST_RETRANSMIT_SKIPS = 3;
+
+    private final long ackDelay;
+    private final int backlogCapacity;
+    private final int mask;
+    private final long maxRto;
+    private final int maxRetries;
+    private final long minRto;
+    private final boolean ordered;
+
+    // Send Window
+    private final Pending[] pending;
+    private final ArrayDeque<Pending> backlog = new ArrayDeque<>();
+    private int sendBase = 0;
+    private int nextSeq = 0;
+    private long rto;
+    private long srtt = -1;
+    private long rttvar = 0;
+
+    // Receive Window
+    private final boolean[] got;
+    private final Packet[] held;
+    private int recvBase = 0;
+    private boolean ackPending = false;
+    private long ackSince = 0;
+
+    private boolean closed = false;
+    private boolean dead = false;
+    private int waiters = 0;
+
+    /**
+     * Constructor.
+     * Reads the "RudpWindowSize", "RudpInitialRto", "RudpMinRto", "RudpMaxRto", "RudpMaxRetries", "RudpAckDelay", "RudpOrdered" and "OutboundQueueCapacity" options of the specified {@link wrath.util.Config}.
+     * @param config The {@link wrath.util.Config} to read the options from.
+     */
+    public RudpSession(Config config)
+    {
+        int window = Integer.highestOneBit(Math.max(32, config.getInt("RudpWindowSize", 256)) * 2 - 1);
+        this.mask = window - 1;
+        this.pending = new Pending[window];
+        for(int i = 0; i < window; i++) pending[i] = new Pending();
+        this.got = new boolean[window];
+        this.ordered = config.getBoolean("RudpOrdered", true);
+        this.held = ordered ? new Packet[window] : null;
+
+        this.rto = TimeUnit.MILLISECONDS.toNanos(config.getInt("RudpInitialRto", 250));
+        this.minRto = TimeUnit.MILLISECONDS.toNanos(config.getInt("RudpMinRto", 50));
+        this.maxRto = TimeUnit.MILLISECONDS.toNanos(config.getInt("RudpMaxRto", 3000));
+        this.maxRetries = config.getInt("RudpMaxRetries", 10);
+        this.ackDelay = TimeUnit.MILLISECONDS.toNanos(config.getInt("RudpAckDelay", 10));
+        this.backlogCapacity = Math.max(1, config.getInt("OutboundQueueCapacity", 1024));
+    }
+
+    /**
+     * Acknowledges one datagram of the send window.
+     * @return Returns true if the datagram was still waiting for an acknowledgement.
+     */
+    private boolean ack(int seq, long now)
+    {
+        Pending p = pending[seq & mask];
+        if(!p.inFlight || p.seq != seq) return false;
+        // Karn's algorithm: a resent datagram's acknowledgement could belong to either copy, so it is not timed.
+        if(p.retries == 0) sample(now - p.sentAt);
+        p.frame.release();
+        p.frame = null;
+        p.inFlight = false;
+        return true;
+    }
+
+    /**
+     * Gives back all buffers. Datagrams that have not been acknowledged, and messages still waiting for room in the window, are dropped.
+     */
+    public synchronized void close()
+    {
+        if(closed) return;
+        closed = true;
+        for(Pending p : pending)
+            if(p.inFlight)
+            {
+                p.frame.release();
+                p.frame = null;
+                p.inFlight = false;
+            }
+        for(Pending p : backlog) p.frame.release();
+        backlog.clear();
+        if(waiters > 0) notifyAll();
+        if(held != null)
+            for(int i = 0; i < held.length; i++)
+                if(held[i] != null)
+                {
+                    held[i].release();
+                    held[i] = null;
+                }
+    }
+
+    /**
+     * Called when the peer stopped acknowledging datagrams after "RudpMaxRetries" resends.
+     */
+    protected abstract void dropped();
+
+    /**
+     * Called with each received message, in order if "RudpOrdered" is set. Never called while the session is locked.
+     * @param p The {@link wrath.net.Packet} holding the message.
+     */
+    protected abstract void deliver(Packet p);
+
+    /**
+     * Gets the current retransmission timeout.
+     * @return Returns the current retransmission timeout, in nanoseconds.
+     */
+    public synchronized long getRto()
+    {
+        return rto;
+    }
+
+    /**
+     * Gets the smoothed round trip time.
+     * @return Returns the smoothed round trip time in nanoseconds, or -1 if it has not been measured yet.
+     */
+    public synchronized long getSmoothedRtt()
+    {
+        return srtt;
+    }
+
+    /**
+     * Checks if a datagram is an RUDP ACK datagram, which holds nothing but acknowledgements.
+     * @param data The array holding the datagram.
+     * @param offset The index of the datagram in the array.
+     * @param length The length of the datagram.
+     * @return Returns true if the datagram is an ACK datagram. Otherwise false.
+     */
+    public static boolean isAck(byte[] data, int offset, int length)
+    {
+        return length >= HEADER_LENGTH && data[offset] == TYPE_ACK;
+    }
+
+    /**
+     * Checks if a datagram can open a new session: the Client's one byte greeting, or the first data frame in case the greeting was lost.
+     * @param data The array holding the datagram.
+     * @param offset The offset of the datagram in the array.
+     * @param length The length of the datagram.
+     * @return Returns true if the datagram can open a new session. Otherwise false.
+     */
+    public static boolean opensSession(byte[] data, int offset, int length)
+    {
+        if(length == 1) return data[offset] == 0;
+        return length >= HEADER_LENGTH && data[offset] == TYPE_DATA && (data[offset + 1] | data[offset + 2] | data[offset + 3] | data[offset + 4]) == 0;
+    }
+
+    /**
+     * Checks if every datagram sent has been acknowledged.
+     * @return Returns true if every datagram sent has been acknowledged. Otherwise false.
+     */
+    public synchronized boolean isFlushed()
+    {
+        return sendBase == nextSeq && backlog.isEmpty();
+    }
+
+    /**
+     * Puts a message into the next free slot of the send window and transmits it.
+     */
+    private void launch(PooledBuffer frame, int length)
+    {
+        Pending p = pending[nextSeq & mask];
+        p.frame = frame;
+        p.length = length;
+        ByteBuffer.wrap(frame.array()).put(TYPE_DATA).putInt(nextSeq);
+
+        p.seq = nextSeq++;
+        p.inFlight = true;
+        p.retries = 0;
+        p.skips = 0;
+        p.sentAt = System.nanoTime();
+        p.deadline = p.sentAt + rto;
+        transmit(p);
+    }
+
+    /**
+     * Handles one received datagram. Called by the receive thread.
+     * @param data The array holding the datagram.
+     * @param offset The index of the datagram in the array.
+     * @param length The length of the datagram.
+     * @param pooled If true, delivered messages are copied into buffers from the {@link wrath.net.BufferPool}.
+     */
+    public void receive(byte[] data, int offset, int length, boolean pooled)
+    {
+        if(length < HEADER_LENGTH) return;
+        ByteBuffer in = ByteBuffer.wrap(data, offset, length);
+        byte type = in.get();
+        if(type != TYPE_DATA && type != TYPE_ACK) return;
+        int seq = in.getInt();
+        int ack = in.getInt();
+        int ackBits = in.getInt();
+
+        Packet now = null;
+        ArrayList<Packet> later = null;
+        synchronized(this)
+        {
+            if(closed) return;
+            onAck(ack, ackBits);
+            if(type != TYPE_DATA) return;
+
+            if(!ackPending)
+            {
+                ackPending = true;
+                ackSince = System.nanoTime();
+            }
+
+            int d = seq - recvBase;
+            if(d < 0 || d > mask || got[seq & mask])
+            {
+                // Duplicate or outside of the window. Answer it right away, so the peer stops resending.
+                sendAck();
+                return;
+            }
+
+            int len = length - HEADER_LENGTH;
+            PooledBuffer buf = BufferPool.allocate(len, pooled);
+            System.arraycopy(data, offset + HEADER_LENGTH, buf.array(), 0, len);
+            Packet p = new Packet(buf, len);
+            got[seq & mask] = true;
+
+            if(!ordered) now = p;
+            else held[seq & mask] = p;
+            while(got[recvBase & mask])
+            {
+                got[recvBase & mask] = false;
+                if(ordered)
+                {
+                    Packet h = held[recvBase & mask];
+                    held[recvBase & mask] = null;
+                    if(now == null) now = h;
+                    else
+                    {
+                        if(later == null) later = new ArrayList<>();
+                        later.add(h);
+                    }
+                }
+                recvBase++;
+            }
+
+            // A gap was found; tell the peer straight away so it can resend early.
+            if(d > 0) sendAck();
+        }
+
+        if(now != null) deliver(now);
+        if(later != null) for(Packet p : later) deliver(p);
+    }
+
+    /**
+     * Processes the acknowledgements carried by a received datagram.
+     */
+    private void onAck(int ack, int ackBits)
+    {
+        long now = System.nanoTime();
+        int base = sendBase;
+        int highest = sendBase - 1;
+
+        // Cumulative
+        if(ack - sendBase >= 0 && ack - nextSeq < 0)
+        {
+            for(int s = sendBase; s - ack <= 0; s++) ack(s, now);
+            highest = ack;
+        }
+        // Selective
+        for(int i = 0; ackBits != 0 && i < 32; i++, ackBits >>>= 1)
+        {
+            int s = ack + 2 + i;
+            if((ackBits & 1) != 0 && s - sendBase >= 0 && s - nextSeq < 0 && ack(s, now) && s - highest > 0) highest = s;
+        }
+
+        while(sendBase != nextSeq && !pending[sendBase & mask].inFlight) sendBase++;
+
+        // Fast retransmit anything that three later datagrams have overtaken.
+        for(int s = sendBase; s - highest < 0; s++)
+        {
+            Pending p = pending[s & mask];
+            if(p.inFlight && ++p.skips == FAST_RETRANSMIT_SKIPS) resend(p, now);
+        }
+
+        // Room was made in the window; send what was waiting for it.
+        boolean full = backlog.size() >= backlogCapacity;
+        while(!backlog.isEmpty() && nextSeq - sendBase <= mask)
+        {
+            Pending q = backlog.poll();
+            launch(q.frame, q.length);
+        }
+        if(full && waiters > 0 && backlog.size() < backlogCapacity) notifyAll();
+    }
+
+    /**
+     * Sends a datagram that has not been acknowledged again, with fresh acknowledgements.
+     */
+    private void resend(Pending p, long now)
+    {
+        p.retries++;
+        p.skips = 0;
+        p.deadline = now + Math.min(maxRto, rto << Math.min(p.retries, 16));
+        transmit(p);
+    }
+
+    /**
+     * Updates the round trip time estimate and the retransmission timeout, as described by RFC 6298.
+     */
+    private void sample(long rtt)
+    {
+        if(srtt < 0)
+        {
+            srtt = rtt;
+            rttvar = rtt / 2;
+        }
+        else
+        {
+            rttvar = (3 * rttvar + Math.abs(srtt - rtt)) / 4;
+            srtt = (7 * srtt + rtt) / 8;
+        }
+        rto = Math.max(minRto, Math.min(maxRto, srtt + Math.max(ackDelay, 4 * rttvar)));
+    }
+
+    /**
+     * Reliably sends a message, waiting for room if the queue of messages waiting for the send window is full.
+     * @param data The {@link java.nio.ByteBuffer} holding the message between its position and limit. Its position is not changed.
+     * @return Returns the policy that was applied because the queue was full, or null if it had room.
+     */
+    public OverflowPolicy send(ByteBuffer data)
+    {
+        return send(data, OverflowPolicy.BLOCK, null);
+    }
+
+    /**
+     * Reliably sends a message. If the send window is full, the message waits until the peer acknowledges enough data.
+     * If the queue of messages waiting for the window is full as well, the specified policy is applied. {@link wrath.net.managers.OverflowPolicy#DISCONNECT_CLIENT} only drops the message; disconnecting is up to the caller.
+     * @param data The {@link java.nio.ByteBuffer} holding the message between its position and limit. Its position is not changed.
+     * @param policy The {@link wrath.net.managers.OverflowPolicy} to apply if the queue is full.
+     * @param counters The {@link wrath.net.managers.OverflowCounters} to count the applied policy in, or null.
+     * @return Returns the policy that was applied because the queue was full, or null if it had room. Messages sent after the session was closed are dropped silently.
+     */
+    public OverflowPolicy send(ByteBuffer data, OverflowPolicy policy, OverflowCounters counters)
+    {
+        return send(data, policy, counters, Long.MAX_VALUE);
+    }
+
+    /**
+     * Reliably sends a message, like {@link #send(java.nio.ByteBuffer, wrath.net.managers.OverflowPolicy, wrath.net.managers.OverflowCounters)}, but waits a limited time under {@link wrath.net.managers.OverflowPolicy#BLOCK}.
+     * If the queue is still full once the time is up, the message is dropped and {@link wrath.net.managers.OverflowPolicy#DISCONNECT_CLIENT} is counted and returned.
+     * @param data The {@link java.nio.ByteBuffer} holding the message between its position and limit. Its position is not changed.
+     * @param policy The {@link wrath.net.managers.OverflowPolicy} to apply if the queue is full.
+     * @param counters The {@link wrath.net.managers.OverflowCounters} to count the applied policy in, or null.
+     * @param blockTimeout The longest time to wait for room, in nanoseconds.
+     * @return Returns the policy that was applied because the queue was full, or null if it had room. Messages sent after the session was closed are dropped silently.
+     */
+    public synchronized OverflowPolicy send(ByteBuffer data, OverflowPolicy policy, OverflowCounters counters, long blockTimeout)
+    {
+        if(closed) return null;
+
+        OverflowPolicy overflow = null;
+        if(backlog.size() >= backlogCapacity)
+        {
+            overflow = policy;
+            if(counters != null) counters.increment(policy);
+            if(policy == OverflowPolicy.BLOCK)
+            {
+                waiters++;
+                long start = System.nanoTime();
+                try
+                {
+                    while(!closed && backlog.size() >= backlogCapacity)
+                    {
+                        long left = blockTimeout - (System.nanoTime() - start);
+                        if(left <= 0)
+                        {
+                            if(counters != null) counters.increment(OverflowPolicy.DISCONNECT_CLIENT);
+                            return OverflowPolicy.DISCONNECT_CLIENT;
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(this, left);
+                    }
+                }
+                catch(InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                finally
+                {
+                    waiters--;
+                }
+                if(closed) return overflow;
+            }
+            else if(policy == OverflowPolicy.DROP_OLDEST) backlog.poll().frame.release();
+            else return overflow;
+        }
+
+        int len = data.remaining();
+        PooledBuffer frame = BufferPool.allocate(HEADER_LENGTH + len);
+        ByteBuffer buf = ByteBuffer.wrap(frame.array());
+        buf.position(HEADER_LENGTH);
+        buf.put(data.duplicate());
+
+        if(nextSeq - sendBase <= mask) launch(frame, HEADER_LENGTH + len);
+        else
+        {
+            Pending q = new Pending();
+            q.frame = frame;
+            q.length = HEADER_LENGTH + len;
+            backlog.add(q);
+        }
+        return overflow;
+    }
+
+    /**
+     * Sends an ACK datagram holding nothing but acknowledgements.
+     */
+    private void sendAck()
+    {
+        byte[] r = new byte[HEADER_LENGTH];
+        ByteBuffer frame = ByteBuffer.wrap(r);
+        frame.put(TYPE_ACK).putInt(0);
+        writeAcks(frame);
+        ackPending = false;
+        transmit(r, r.length);
+    }
+
+    /**
+     * Resends timed out datagrams and sends delayed acknowledgements. Called every few milliseconds by the timer thread.
+     */
+    public void tick()
+    {
+        synchronized(this)
+        {
+            if(closed) return;
+            long now = System.nanoTime();
+            for(int s = sendBase; s != nextSeq; s++)
+            {
+                Pending p = pending[s & mask];
+                if(!p.inFlight || now - p.deadline < 0) continue;
+                if(p.retries >= maxRetries)
+                {
+                    dead = true;
+                    break;
+                }
+                resend(p, now);
+            }
+            if(!dead && ackPending && now - ackSince >= ackDelay) sendAck();
+        }
+
+        if(dead)
+        {
+            close();
+            dropped();
+        }
+    }
+
+    /**
+     * Writes the current acknowledgements and sends a data datagram.
+     */
+    private void transmit(Pending p)
+    {
+        ByteBuffer frame = ByteBuffer.wrap(p.frame.array());
+        frame.position(5);
+        writeAcks(frame);
+        ackPending = false;
+        transmit(p.frame.array(), p.length);
+    }
+
+    /**
+     * Sends one datagram to the peer.
+     * @param data The array holding the datagram, starting at index 0.
+     * @param length The length of the datagram.
+     */
+    protected abstract void transmit(byte[] data, int length);
+
+    /**
+     * Writes the cumulative and selective acknowledgements.
+     * The cumulative acknowledgement is the last sequence number received with nothing missing before it. Bit i of the selective acknowledgement is set if the datagram two plus i after it has been received.
+     */
+    private void writeAcks(ByteBuffer frame)
+    {
+        int bits = 0;
+        for(int i = 0; i < 32; i++)
+            if(got[(recvBase + 1 + i) & mask]) bits |= 1 << i;
+        frame.putInt(recvBase - 1).putInt(bits);
+    }
+
+    /**
+     * Class to hold one sent datagram until it is acknowledged.
+     */
+    private static class Pending
+    {
+        private long deadline;
+        private PooledBuffer frame;
+        private boolean inFlight = false;
+        private int length;
+        private int retries;
+        private long sentAt;
+        private int seq;
+        private int skips;
+    }
+}
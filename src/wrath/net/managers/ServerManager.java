@@ -6,17 +6,24 @@ package wrath.net.managers;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.crypto.spec.SecretKeySpec;
 import wrath.net.ConnectionState;
+import wrath.net.Metrics;
 import wrath.net.Packet;
 import wrath.net.Server;
 import wrath.net.ServerClient;
 import wrath.util.Compression;
-import wrath.util.Encryptor;
 
 /**
  * Abstract class that allows for polymorphism based on the protocol used in a connection.
@@ -25,69 +32,41 @@ import wrath.util.Encryptor;
 public abstract class ServerManager
 {
     protected Thread clientRecvThread;
-    protected final HashSet<ServerClient> clients = new HashSet<>();
+    /**
+     * The connected Clients. Backed by a {@link java.util.concurrent.ConcurrentHashMap}, so membership checks never lock and iteration never throws a {@link java.util.ConcurrentModificationException}.
+     */
+    protected final Set<ServerClient> clients = ConcurrentHashMap.newKeySet();
     protected String ip = null;
     private Compression.CompressionType compressFormat = null;
+    private final int compressThreshold = Server.getServerConfig().getInt("CompressionThreshold", 128);
+    private final int maxDecompressedSize = Math.max(1, Server.getServerConfig().getInt("MaxDecompressedSize", 16777216));
     private SecretKeySpec encryptKey = null;
     protected int port = 0;
     protected volatile boolean recvFlag = false;
     protected Thread recvThread;
     protected Server server;
     protected ConnectionState state = ConnectionState.SOCKET_NOT_BOUND;
+    protected volatile WaitStrategy waitStrategy = WaitStrategy.fromConfig(Server.getServerConfig());
+    protected volatile FlushPolicy flushPolicy = FlushPolicy.fromConfig(Server.getServerConfig());
+    private final int flushBatchSize = Math.max(1, Server.getServerConfig().getInt("FlushBatchSize", 64));
+    protected volatile OverflowPolicy inboundOverflowPolicy = OverflowPolicy.fromConfig(Server.getServerConfig(), "InboundOverflowPolicy");
+    protected final OverflowCounters inboundOverflows = new OverflowCounters();
+    protected volatile OverflowPolicy outboundOverflowPolicy = OverflowPolicy.fromConfig(Server.getServerConfig(), "OutboundOverflowPolicy", OverflowPolicy.DISCONNECT_CLIENT);
+    protected final long outboundBlockTimeout = TimeUnit.MILLISECONDS.toNanos(Math.max(0, Server.getServerConfig().getInt("OutboundBlockTimeout", 1000)));
+    protected final OverflowCounters outboundOverflows = new OverflowCounters();
+    protected final MetricsRecorder metrics = new MetricsRecorder(true);
+    private final boolean timing = Server.getServerConfig().getBoolean("MetricsTiming", true);
+    private final long idleTimeout = TimeUnit.MILLISECONDS.toNanos(Math.max(0, Server.getServerConfig().getInt("IdleTimeout", 0)));
+    private volatile TimingWheel timer = null;
+    protected final NetThreadFactory threadFactory = NetThreadFactory.fromConfig(Server.getServerConfig());
+    protected final boolean pooledBuffers = Server.getServerConfig().getBoolean("PooledBuffers", true);
     
-    private final ArrayList<ServerClient> conList = new ArrayList<>();
-    private final ArrayList<ServerClient> dconList = new ArrayList<>();
-    private final ArrayList<ServerReceivedEvent> execList = new ArrayList<>();
-
-    /**
-     * Thread where all data is processed. This includes compression, encryption, and the onReceive(), onClientConnect(), and onClientDisconnect() methods.
-     */
-    protected final Thread execThread = new Thread(() ->
-    {
-        while(!recvFlag)
-        {
-            if(!conList.isEmpty())
-            {
-                ServerClient[] clis = new ServerClient[conList.size()];
-                conList.toArray(clis);
-                conList.clear();
-                for(ServerClient c : clis) c.getServer().getServerListener().onClientConnect(c);
-            }
-            
-            if(!dconList.isEmpty())
-            {
-                ServerClient[] clis = new ServerClient[dconList.size()];
-                dconList.toArray(clis);
-                dconList.clear();
-                for(ServerClient c : clis) c.getServer().getServerListener().onClientDisconnect(c);
-            }
-            
-            if(!execList.isEmpty())
-            {
-                ServerReceivedEvent[] events = new ServerReceivedEvent[execList.size()];
-                execList.toArray(events);
-                execList.clear();
-                for(ServerReceivedEvent event : events)
-                {
-                    Packet p = event.packet;
-                    
-                    // Decrypt
-                    if(encryptKey != null) p = new Packet(Encryptor.decryptData(p.getRawData(), encryptKey));
-                    
-                    // Decompress
-                    if(compressFormat != null) p = new Packet(Compression.decompressData(p.getRawData(), compressFormat));
-                    
-                    // Check if TERMINATION_CALL packet. Pushes event to Listener if not.
-                    try
-                    {
-                        if(Arrays.equals(p.getRawData(), Packet.TERMINATION_CALL)) disconnectClient(event.client, false);
-                        else event.client.getServer().getServerListener().onReceive(event.client, p);
-                    }
-                    catch(NullPointerException e){}
-                }
-            }
-        }
-    });
+    private static final int EVENT_CONNECT = 0;
+    private static final int EVENT_DISCONNECT = 1;
+    private static final int EVENT_RECEIVE = 2;
+    
+    private volatile DecodeWorker[] decoders = new DecodeWorker[0];
+    private volatile ExecWorker[] workers = new ExecWorker[0];
     
     /**
      * Constructor.
@@ -100,6 +79,11 @@ public abstract class ServerManager
 
     /**
      * Binds the server socket using the specified parameters.
+     * The "ExecThreads" config option sets how many execution threads process received data. Defaults to 1.
+     * The "DecodeThreads" config option sets how many threads decrypt and decompress received data before handing it to the execution threads. Defaults to 0, which decodes on the execution threads.
+     * The "ThreadMode" config option chooses between "platform" and "virtual" threads for the execution and per-connection threads.
+     * The "IdleTimeout" config option sets after how many milliseconds without receiving anything a Client is disconnected. Defaults to 0, which never disconnects idle Clients.
+     * Clients with a "HeartbeatInterval" below the timeout keep their connection alive while they have nothing else to send.
      * @param ip The IP address to listen on.
      * @param port The port for the server to listen to.
      */
@@ -119,16 +103,41 @@ public abstract class ServerManager
         
         try
         {
+            // Reset Flag
+            recvFlag = false;
+            // Start Execution Threads
+            int threads = Math.max(1, Server.getServerConfig().getInt("ExecThreads", 1));
+            int capacity = Math.max(1024, Server.getServerConfig().getInt("ExecQueueCapacity", 65536) / threads);
+            ExecWorker[] w = new ExecWorker[threads];
+            for(int i = 0; i < threads; i++)
+            {
+                w[i] = new ExecWorker(capacity);
+                w[i].thread.setName(threads == 1 ? "NetServerExecThread" : "NetServerExecThread-" + i);
+                w[i].thread.setDaemon(true);
+                w[i].thread.start();
+            }
+            workers = w;
+            
+            // Start Decode Threads
+            int decodeThreads = Math.max(0, Server.getServerConfig().getInt("DecodeThreads", 0));
+            DecodeWorker[] d = new DecodeWorker[decodeThreads];
+            for(int i = 0; i < decodeThreads; i++)
+            {
+                d[i] = new DecodeWorker(capacity);
+                d[i].thread.setName("NetServerDecodeThread-" + i);
+                d[i].thread.setDaemon(true);
+                d[i].thread.start();
+            }
+            decoders = d;
+            
+            // Start the Idle Timer
+            if(idleTimeout > 0) timer = new TimingWheel("NetServerTimerThread", Math.max(1, Server.getServerConfig().getInt("TimerTickTime", 100)), TimeUnit.MILLISECONDS, 512);
+            
             // Create the Socket
             createSocket(ip, port);
             
-            // Reset Flag
-            recvFlag = false;
             // Manage Threads
             recvThread.setName("NetServerRecvThread");
-            execThread.setName("NetServerExecThread");
-            execThread.setDaemon(true);
-            execThread.start();
             recvThread.start();
             
             // Set State
@@ -139,6 +148,8 @@ public abstract class ServerManager
         {
             System.err.println("] ERROR:  Could not bind ServerSocket to [" + ip + ":" + port + "]! UNKNOWN Error!");
             state = ConnectionState.SOCKET_NOT_BOUND_ERROR;
+            stopWorkers();
+            stopTimer();
         }
     }
     
@@ -183,6 +194,88 @@ public abstract class ServerManager
         encryptKey = null;
     }
     
+    /**
+     * Sends data to every connected {@link wrath.net.ServerClient}.
+     * @param data The data to send to the Clients.
+     */
+    public void broadcast(byte[] data)
+    {
+        broadcast(new Packet(data));
+    }
+    
+    /**
+     * Sends data to every connected {@link wrath.net.ServerClient}.
+     * @param object The object to send to the Clients.
+     */
+    public void broadcast(Serializable object)
+    {
+        broadcast(new Packet(object));
+    }
+    
+    /**
+     * Sends data to every connected {@link wrath.net.ServerClient}.
+     * @param packet The {@link wrath.net.Packet} containing the data to send to the Clients.
+     */
+    public void broadcast(Packet packet)
+    {
+        broadcast(Arrays.asList(clients.toArray(new ServerClient[0])), packet);
+    }
+    
+    /**
+     * Sends data to each of the specified {@link wrath.net.ServerClient}s that is connected.
+     * @param recipients The {@link wrath.net.ServerClient}s to send data to.
+     * @param data The data to send to the Clients.
+     */
+    public void broadcast(Collection<ServerClient> recipients, byte[] data)
+    {
+        broadcast(recipients, new Packet(data));
+    }
+    
+    /**
+     * Sends data to each of the specified {@link wrath.net.ServerClient}s that is connected.
+     * @param recipients The {@link wrath.net.ServerClient}s to send data to.
+     * @param object The object to send to the Clients.
+     */
+    public void broadcast(Collection<ServerClient> recipients, Serializable object)
+    {
+        broadcast(recipients, new Packet(object));
+    }
+    
+    /**
+     * Sends data to each of the specified {@link wrath.net.ServerClient}s that is connected.
+     * Unlike calling send() for each Client, the data is serialized, compressed and encrypted only once, and the result is shared by all recipients.
+     * @param recipients The {@link wrath.net.ServerClient}s to send data to.
+     * @param packet The {@link wrath.net.Packet} containing the data to send to the Clients.
+     */
+    public void broadcast(Collection<ServerClient> recipients, Packet packet)
+    {
+        ArrayList<ServerClient> targets = new ArrayList<>(recipients.size());
+        for(ServerClient c : recipients)
+            if(clients.contains(c)) targets.add(c);
+        if(!targets.isEmpty()) encodeAndPush(targets, packet);
+    }
+    
+    /**
+     * Decides whether data being pushed to a Client may stay in its send buffer instead of being written to the socket right away.
+     * Under {@link wrath.net.managers.FlushPolicy#AUTO}, data pushed from an execution thread may wait, and the Client is remembered so the thread flushes it once it runs out of events.
+     * @param client The {@link wrath.net.ServerClient} the data is being pushed to.
+     * @return Returns true if the implementation should not flush after pushing the data.
+     */
+    protected boolean deferFlush(ServerClient client)
+    {
+        FlushPolicy policy = flushPolicy;
+        if(policy == FlushPolicy.EXPLICIT) return true;
+        else if(policy == FlushPolicy.IMMEDIATE) return false;
+        
+        for(ExecWorker w : workers)
+            if(Thread.currentThread() == w.thread)
+            {
+                w.unflushed.add(client);
+                return true;
+            }
+        return false;
+    }
+    
     /**
      * Disconnects a client from the Server.
      * @param client The {@link wrath.net.ServerClient} to disconnect from the server.
@@ -199,14 +292,27 @@ public abstract class ServerManager
      */
     public void disconnectClient(ServerClient client, boolean calledFirst)
     {
-        if(!clients.contains(client)) return;
+        disconnectClient(client, calledFirst, ConnectionState.DISCONNECTED_SESSION_CLOSED);
+    }
+    
+    /**
+     * Disconnects a client from the Server, recording why.
+     * @param client The {@link wrath.net.ServerClient} to disconnect from the server.
+     * @param calledFirst If true, then the Server is disconnecting from the Client. If false, the Client is disconnecting from the Server.
+     * @param reason The {@link wrath.net.ConnectionState} the Client is left in, telling the listener why it disconnected.
+     */
+    protected void disconnectClient(ServerClient client, boolean calledFirst, ConnectionState reason)
+    {
+        // Only the thread that actually removes the Client goes on, so a Client is never disconnected twice.
+        if(!clients.remove(client)) return;
+        client.setConnectionState(reason);
         if(calledFirst)
         {
             System.out.println("] Disconnecting Client " + client.getClientIdentifier() + ".");
-            client.send(Packet.TERMINATION_CALL);
+            encodeAndPush(Collections.singletonList(client), new Packet(Packet.TERMINATION_CALL));
+            flushData(client);
         }
         else System.out.println("] Client " + client.getClientIdentifier() + " Disconnecting.");
-        clients.remove(client);
         removeClient(client);
         
         onClientDisconnect(client);
@@ -215,7 +321,8 @@ public abstract class ServerManager
     
     /**
      * Enables data being sent and received to be compressed and decompressed in specified format.
-     * WARNING: This should only be enabled when sending large amounts of data.
+     * Only packets of at least "CompressionThreshold" bytes (default 128) that compression makes smaller are sent compressed; a flag byte on every packet tells the other side which ones are.
+     * Received packets that would decompress to more than "MaxDecompressedSize" bytes (default 16MB) are dropped.
      * WARNING: The Server and Client must both have compression enabled with the same format.
      * @param format The format to compress the data with.
      */
@@ -226,6 +333,7 @@ public abstract class ServerManager
     
     /**
      * Enables all data going through this Server->Client connection to be encrypted/decrypted with the specified phrase/key.
+     * Data is encrypted with AES-GCM, so packets that were tampered with are dropped. The key must be a 128, 192 or 256 bit AES key.
      * @param key The Key generated from {@link wrath.util.Encryption#generateKey(java.lang.String, java.lang.String) }.
      * WARNING: The Client and Server must both have encryption enabled with the same passphrase/key.
      * WARNING: Enabling this process will slow the connection noticeably.
@@ -235,13 +343,185 @@ public abstract class ServerManager
         encryptKey = key;
     }
     
+    /**
+     * Decrypts and decompresses the data of a received event as configured, replacing its Packet with the decoded one.
+     * Data that was not compressed is decoded into a view of the decrypted or received Packet, which is then kept in the event's held Packet so it can be released after the listener is done.
+     * @param c The {@link wrath.net.ServerClient} the data was received from.
+     * @param e The {@link wrath.net.managers.ServerManager.ServerReceivedEvent} holding the received data.
+     * @return Returns true if the data was decoded. Otherwise it was dropped and released, and false is returned.
+     */
+    private boolean decode(ServerClient c, ServerReceivedEvent e)
+    {
+        Packet plain = e.packet;
+        e.decoded = true;
+        if(encryptKey == null && compressFormat == null) return true;
+        long start = timing ? System.nanoTime() : 0;
+        
+        // Decrypt
+        if(encryptKey != null)
+        {
+            Packet raw = plain;
+            plain = PacketCipher.decrypt(raw, encryptKey, pooledBuffers);
+            raw.release();
+            if(plain == null)
+            {
+                System.err.println("] WARNING: Could not decrypt data from " + c.getClientIdentifier() + "! Dropping it.");
+                metrics.dropped();
+                e.packet = null;
+                return false;
+            }
+            e.packet = plain;
+        }
+        
+        // Decompress
+        if(compressFormat != null)
+        {
+            Packet p = PacketCompressor.decode(plain, compressFormat, pooledBuffers, maxDecompressedSize);
+            if(p == null)
+            {
+                System.err.println("] WARNING: Could not decompress data from " + c.getClientIdentifier() + "! Dropping it.");
+                metrics.dropped();
+                plain.release();
+                e.packet = null;
+                return false;
+            }
+            if(plain.getByte(0) == PacketCompressor.STORED) e.held = plain;
+            else plain.release();
+            e.packet = p;
+        }
+        if(timing) metrics.getDecodeTime().record(System.nanoTime() - start);
+        return true;
+    }
+    
+    /**
+     * Processes a single event on the execution thread.
+     * @param type The type of event, one of the EVENT_ constants.
+     * @param c The {@link wrath.net.ServerClient} the event belongs to.
+     * @param p The decoded {@link wrath.net.Packet} containing the received data, or null for connection events.
+     * @param held The {@link wrath.net.Packet} the decoded Packet is a view of, to be released along with it, or null.
+     */
+    private void execute(int type, ServerClient c, Packet p, Packet held)
+    {
+        if(type == EVENT_CONNECT) c.getServer().getServerListener().onClientConnect(c);
+        else if(type == EVENT_DISCONNECT) c.getServer().getServerListener().onClientDisconnect(c);
+        else
+        {
+            // Check if TERMINATION_CALL or HEARTBEAT packet. Pushes event to Listener if not.
+            try
+            {
+                if(p.dataEquals(Packet.TERMINATION_CALL)) disconnectClient(c, false);
+                else if(!p.dataEquals(Packet.HEARTBEAT))
+                {
+                    long start = timing ? System.nanoTime() : 0;
+                    c.getServer().getServerListener().onReceive(c, p);
+                    if(timing) metrics.getReceiveTime().record(System.nanoTime() - start);
+                }
+            }
+            catch(NullPointerException e){}
+            finally
+            {
+                // Give pooled buffers back once the listener is done with them.
+                p.release();
+                if(held != null) held.release();
+            }
+        }
+    }
+    
+    /**
+     * Compresses and encrypts the data of a {@link wrath.net.Packet} as configured.
+     * @param packet The {@link wrath.net.Packet} containing the data to send.
+     * @return Returns the Packet holding the final data to push, which must be released once pushed unless it is the Packet itself, or null if the data could not be encrypted. Without compression or encryption, this is the Packet itself.
+     */
+    private Packet encode(Packet packet)
+    {
+        // Compression
+        if(compressFormat != null) packet = new Packet(PacketCompressor.compress(packet.getBuffer(), compressFormat, compressThreshold));
+        
+        // Encryption
+        if(encryptKey != null)
+        {
+            packet = PacketCipher.encrypt(packet.getBuffer(), encryptKey, pooledBuffers);
+            if(packet == null) System.err.println("] ERROR: Could not encrypt data! The key is not a valid AES key.");
+        }
+        return packet;
+    }
+    
+    /**
+     * Compresses and encrypts the data of a {@link wrath.net.Packet} as configured, and pushes it to the specified Clients.
+     * @param recipients The connected {@link wrath.net.ServerClient}s to send data to.
+     * @param packet The {@link wrath.net.Packet} containing the data to send.
+     */
+    private void encodeAndPush(Collection<ServerClient> recipients, Packet packet)
+    {
+        Packet data = encode(packet);
+        if(data == null) return;
+        try
+        {
+            int length = data.getLength();
+            if(recipients.size() == 1)
+            {
+                ServerClient c = recipients.iterator().next();
+                pushData(c, data.getBuffer());
+                c.getMetricsRecorder().sent(length, 1);
+            }
+            else
+            {
+                pushData(recipients, data.getBuffer());
+                for(ServerClient c : recipients) c.getMetricsRecorder().sent(length, 1);
+            }
+            metrics.sent(length, recipients.size());
+        }
+        finally
+        {
+            if(data != packet) data.release();
+        }
+    }
+    
+    /**
+     * Writes any data held back by the {@link wrath.net.managers.FlushPolicy} to the sockets of all connected Clients.
+     */
+    public void flush()
+    {
+        for(ServerClient c : clients) flushData(c);
+    }
+    
+    /**
+     * Writes any data held back by the {@link wrath.net.managers.FlushPolicy} to the specified Client's socket.
+     * @param client The {@link wrath.net.ServerClient} to flush.
+     */
+    public void flush(ServerClient client)
+    {
+        if(clients.contains(client)) flushData(client);
+    }
+    
+    /**
+     * Writes any data held back for the specified Client to its socket, through the implementation class.
+     * Protocols that write every message as soon as it is pushed do not need to override this.
+     * @param client The {@link wrath.net.ServerClient} to flush.
+     */
+    protected void flushData(ServerClient client) {}
+    
     /**
      * Gets the list of {@link wrath.net.ServerClient}s connected to this Server.
+     * The list is a read-only live view. It may be iterated while Clients connect and disconnect; the iteration sees each Client that stays connected exactly once.
      * @return Returns the list of {@link wrath.net.ServerClient}s connected to this Server in the form of a {@link java.util.Collection}.
      */
     public Collection<ServerClient> getClients()
     {
-        return clients;
+        return Collections.unmodifiableSet(clients);
+    }
+    
+    /**
+     * Gets a snapshot of the Server's statistics over all Clients.
+     * The "MetricsTiming" config option turns recording the decode and onReceive() times on or off. Defaults to true.
+     * @return Returns a {@link wrath.net.Metrics} snapshot of the Server's statistics.
+     */
+    public Metrics getMetrics()
+    {
+        int depth = 0;
+        for(DecodeWorker d : decoders) depth += d.queue.size();
+        for(ExecWorker w : workers) depth += w.queue.size();
+        return metrics.snapshot(inboundOverflows.dropped() + outboundOverflows.dropped(), depth);
     }
     
     /**
@@ -253,6 +533,60 @@ public abstract class ServerManager
         return state;
     }
     
+    /**
+     * Gets the {@link wrath.net.managers.FlushPolicy} that decides when sent data is written to the socket.
+     * @return Returns the {@link wrath.net.managers.FlushPolicy} used by this Server.
+     */
+    public FlushPolicy getFlushPolicy()
+    {
+        return flushPolicy;
+    }
+    
+    /**
+     * Gets the {@link wrath.net.managers.WaitStrategy} used by the execution thread while there are no events to process.
+     * @return Returns the {@link wrath.net.managers.WaitStrategy} used by the execution thread.
+     */
+    public WaitStrategy getWaitStrategy()
+    {
+        return waitStrategy;
+    }
+    
+    /**
+     * Gets the {@link wrath.net.managers.OverflowPolicy} applied to received data when an execution thread's queue is full.
+     * @return Returns the {@link wrath.net.managers.OverflowPolicy} applied to received data.
+     */
+    public OverflowPolicy getInboundOverflowPolicy()
+    {
+        return inboundOverflowPolicy;
+    }
+    
+    /**
+     * Gets the counters of how often the inbound {@link wrath.net.managers.OverflowPolicy} was applied.
+     * @return Returns the {@link wrath.net.managers.OverflowCounters} of the execution queues.
+     */
+    public OverflowCounters getInboundOverflowCounters()
+    {
+        return inboundOverflows;
+    }
+    
+    /**
+     * Gets the {@link wrath.net.managers.OverflowPolicy} applied to sent data when a Client's outbound queue is full.
+     * @return Returns the {@link wrath.net.managers.OverflowPolicy} applied to sent data.
+     */
+    public OverflowPolicy getOutboundOverflowPolicy()
+    {
+        return outboundOverflowPolicy;
+    }
+    
+    /**
+     * Gets the counters of how often the outbound {@link wrath.net.managers.OverflowPolicy} was applied.
+     * @return Returns the {@link wrath.net.managers.OverflowCounters} of the Clients' outbound queues.
+     */
+    public OverflowCounters getOutboundOverflowCounters()
+    {
+        return outboundOverflows;
+    }
+    
     /**
      * Gets the IP Address/Hostname of the current or last bound ServerSocket in the form of a String.
      * Returns null if never bound or no IP specified.
@@ -292,13 +626,37 @@ public abstract class ServerManager
         return clients.contains(client);
     }
     
+    /**
+     * Checks if a Client has been idle for longer than the "IdleTimeout", and disconnects it if so. Runs on the timer thread.
+     * Otherwise the check is scheduled again for when the Client would time out, so each Client only ever has one pending timeout, however much data it sends.
+     * @param t The {@link wrath.net.managers.TimingWheel} the check was scheduled on.
+     * @param c The {@link wrath.net.ServerClient} to check.
+     */
+    private void checkIdle(TimingWheel t, ServerClient c)
+    {
+        if(t != timer || !clients.contains(c)) return;
+        long idle = t.now() - c.getLastReceiveTime();
+        if(idle < idleTimeout) t.schedule(() -> checkIdle(t, c), idleTimeout - idle, TimeUnit.NANOSECONDS);
+        else
+        {
+            System.out.println("] Client " + c.getClientIdentifier() + " timed out after " + ((double) idle / 1000000000) + "s without data.");
+            disconnectClient(c, true, ConnectionState.DISCONNECTED_TIMED_OUT);
+        }
+    }
+    
     /**
      * Called when a {@link wrath.net.ServerClient} connects to the server.
      * @param c The {@link wrath.net.ServerClient} connecting to the server.
      */
     protected void onClientConnect(ServerClient c)
     {
-        conList.add(c);
+        TimingWheel t = timer;
+        if(t != null)
+        {
+            c.setLastReceiveTime(t.now());
+            t.schedule(() -> checkIdle(t, c), idleTimeout, TimeUnit.NANOSECONDS);
+        }
+        post(EVENT_CONNECT, c, null);
     }
     
     /**
@@ -307,24 +665,193 @@ public abstract class ServerManager
      */
     protected void onClientDisconnect(ServerClient c)
     {
-        dconList.add(c);
+        post(EVENT_DISCONNECT, c, null);
+    }
+    
+    /**
+     * Called by the implementation when data could not be written to a Client's socket, to count the failure.
+     * @param client The {@link wrath.net.ServerClient} the data was for.
+     */
+    protected void sendFailed(ServerClient client)
+    {
+        client.getMetricsRecorder().sendFailed();
+        metrics.sendFailed();
+    }
+    
+    /**
+     * Called by the implementation when a Client's outbound queue overflowed under {@link wrath.net.managers.OverflowPolicy#DISCONNECT_CLIENT}.
+     * Implementations count every policy they apply in the outbound counters themselves, at the moment they apply it.
+     * Must not be called while the queue is locked, since disconnecting pushes a termination call through it.
+     * @param client The {@link wrath.net.ServerClient} whose queue was full.
+     */
+    protected void disconnectSlowClient(ServerClient client)
+    {
+        if(!clients.contains(client)) return;
+        System.err.println("] WARNING: Client " + client.getClientIdentifier() + " is not reading fast enough, disconnecting.");
+        disconnectClient(client, true);
+    }
+    
+    /**
+     * Gets the {@link wrath.net.managers.OverflowPolicy} the implementation should apply if the outbound queue of the specified Client is full.
+     * A Client that is being disconnected is never waited for or disconnected again; whatever does not fit, such as its termination call, is dropped.
+     * The Server's own threads never wait for a Client, since every other Client they serve would wait with it; under {@link wrath.net.managers.OverflowPolicy#BLOCK} they disconnect it instead.
+     * Other threads wait at most "OutboundBlockTimeout" milliseconds, after which the implementation disconnects the Client as well.
+     * @param client The {@link wrath.net.ServerClient} data is being pushed to.
+     * @return Returns the {@link wrath.net.managers.OverflowPolicy} to apply.
+     */
+    protected OverflowPolicy outboundOverflowPolicy(ServerClient client)
+    {
+        if(!clients.contains(client)) return OverflowPolicy.DROP_NEWEST;
+        OverflowPolicy policy = outboundOverflowPolicy;
+        if(policy == OverflowPolicy.BLOCK && isServerThread()) return OverflowPolicy.DISCONNECT_CLIENT;
+        return policy;
+    }
+    
+    /**
+     * Places an event into the queue that will later get executed on the execution thread of the event's Client.
+     * If there are decode threads, the event first goes through the queue of the Client's decode thread.
+     * @param type The type of event, one of the EVENT_ constants.
+     * @param c The {@link wrath.net.ServerClient} the event belongs to.
+     * @param p The {@link wrath.net.Packet} containing the received data, or null for connection events.
+     */
+    private void post(int type, ServerClient c, Packet p)
+    {
+        // Connection events take the same path as received data, so they stay in order with it.
+        DecodeWorker[] d = decoders;
+        if(d.length > 0) post(d, type, c, p, null, false);
+        else post(workers, type, c, p, null, false);
+    }
+    
+    /**
+     * Places an event into the queue of the stage thread that handles the event's Client.
+     * Each Client is always handled by the same thread of each stage, so its events are processed in the order they were received.
+     * If the queue is full, received data is handled according to the inbound {@link wrath.net.managers.OverflowPolicy}, while connection events always wait for space.
+     * Execution threads never wait, and decode threads only wait for execution threads, since the thread they would wait for may be waiting for them.
+     * Their events are parked behind the queue instead, and taken by the stage thread once everything queued before them was processed; until then, the queue counts as full for everyone else.
+     * @param stages The threads of the stage.
+     * @param type The type of event, one of the EVENT_ constants.
+     * @param c The {@link wrath.net.ServerClient} the event belongs to.
+     * @param p The {@link wrath.net.Packet} containing the received data, or null for connection events.
+     * @param held The {@link wrath.net.Packet} the received data is a view of, or null.
+     * @param decoded True if the received data was already decrypted and decompressed.
+     */
+    private void post(Stage[] stages, int type, ServerClient c, Packet p, Packet held, boolean decoded)
+    {
+        if(stages.length == 0) return;
+        int h = c.hashCode();
+        Stage worker = stages[((h ^ (h >>> 16)) & 0x7FFFFFFF) % stages.length];
+        
+        long seq = -1;
+        if(!worker.parked.isEmpty() || (seq = worker.queue.claim()) < 0)
+        {
+            OverflowPolicy policy = type == EVENT_RECEIVE ? inboundOverflowPolicy : OverflowPolicy.BLOCK;
+            inboundOverflows.increment(policy);
+            if(policy == OverflowPolicy.DROP_NEWEST)
+            {
+                p.release();
+                if(held != null) held.release();
+                return;
+            }
+            else if(policy == OverflowPolicy.DISCONNECT_CLIENT)
+            {
+                p.release();
+                if(held != null) held.release();
+                if(clients.contains(c))
+                {
+                    System.err.println("] WARNING: Client " + c.getClientIdentifier() + " is sending faster than its data can be processed, disconnecting.");
+                    disconnectClient(c, true);
+                }
+                return;
+            }
+            // The stage thread discards the oldest received data as soon as it gets back to the queue.
+            else if(policy == OverflowPolicy.DROP_OLDEST) worker.evictions.incrementAndGet();
+            
+            Stage self = currentStage();
+            if(self != null && !(self instanceof DecodeWorker && worker instanceof ExecWorker))
+            {
+                ServerReceivedEvent e = new ServerReceivedEvent();
+                e.set(type, c, p, held, decoded);
+                worker.parked.add(e);
+                waitStrategy.signal(worker.queue);
+                return;
+            }
+            
+            while(!worker.parked.isEmpty() || (seq = worker.queue.claim()) < 0)
+            {
+                if(worker.stopped)
+                {
+                    if(p != null) p.release();
+                    if(held != null) held.release();
+                    return;
+                }
+                Thread.yield();
+            }
+        }
+        
+        worker.queue.get(seq).set(type, c, p, held, decoded);
+        worker.queue.publish(seq);
+        waitStrategy.signal(worker.queue);
     }
     
     /**
      * Pushes the data through the socket through the implementation class.
      * @param client The {@link wrath.net.ServerClient} to send data to.
-     * @param data The final data to be sent, after compression and encryption.
+     * @param data The final data to be sent, after compression and encryption, between the buffer's position and limit.
+     * The buffer may be a view of a {@link wrath.net.Packet} the caller re-uses once this returns, so anything kept for later must be copied.
+     */
+    protected abstract void pushData(ServerClient client, ByteBuffer data);
+    
+    /**
+     * Pushes the same data to several Clients through the implementation class.
+     * By default this pushes the data to each Client in turn; implementations may override it to share work between the recipients.
+     * @param recipients The connected {@link wrath.net.ServerClient}s to send data to.
+     * @param data The final data to be sent, after compression and encryption, between the buffer's position and limit.
+     * The buffer may be a view of a {@link wrath.net.Packet} the caller re-uses once this returns, so anything kept for later must be copied.
      */
-    protected abstract void pushData(ServerClient client, byte[] data);
+    protected void pushData(Collection<ServerClient> recipients, ByteBuffer data)
+    {
+        for(ServerClient c : recipients) pushData(c, data);
+    }
+    
+    /**
+     * Gets the decode or execution thread the calling thread is, if any.
+     * @return Returns the {@link wrath.net.managers.ServerManager.Stage} of the calling thread, or null if it is not a decode or execution thread.
+     */
+    private Stage currentStage()
+    {
+        Thread t = Thread.currentThread();
+        for(ExecWorker w : workers)
+            if(t == w.thread) return w;
+        for(DecodeWorker d : decoders)
+            if(t == d.thread) return d;
+        return null;
+    }
+    
+    /**
+     * Checks if the calling thread is one the Server relies on to make progress: an execution, decode or receiving thread.
+     * Implementations with more threads of their own may override this to include them.
+     * @return Returns true if the calling thread belongs to the Server. Otherwise false.
+     */
+    protected boolean isServerThread()
+    {
+        return Thread.currentThread() == recvThread || currentStage() != null;
+    }
     
     /**
      * Called when a packet is received and then placed into a queue that will later get executed on the execution thread.
+     * If the queue is full, the inbound {@link wrath.net.managers.OverflowPolicy} decides whether the calling thread waits for space or the data is dropped.
      * @param c The {@link wrath.net.ServerClient} being managed.
      * @param p The {@link wrath.net.Packet} containing the received data.
      */
     protected void receive(ServerClient c, Packet p)
     {
-        execList.add(new ServerReceivedEvent(c, p));
+        // The time only changes once per tick, so this writes to the Client at most once per tick.
+        TimingWheel t = timer;
+        if(t != null && c.getLastReceiveTime() != t.now()) c.setLastReceiveTime(t.now());
+        int length = p.getLength();
+        c.getMetricsRecorder().received(length);
+        metrics.received(length);
+        post(EVENT_RECEIVE, c, p);
     }
     
     /**
@@ -340,18 +867,7 @@ public abstract class ServerManager
      */
     public void send(ServerClient client, byte[] data)
     {
-        if(clients.contains(client))
-        {
-            // Compression
-            if(compressFormat != null) data = Compression.compressData(data, compressFormat);
-            
-            // Encryption
-            if(encryptKey != null) data = Encryptor.encryptData(data, encryptKey);
-            
-            // Push data
-            pushData(client, data);
-        }
-        else System.out.println("] WARNING: Attempted to send data to unknown client!");
+        send(client, new Packet(data));
     }
     
     /**
@@ -361,7 +877,7 @@ public abstract class ServerManager
      */
     public void send(ServerClient client, Serializable object)
     {
-        send(client, new Packet(object).getRawData());
+        send(client, new Packet(object));
     }
     
     /**
@@ -371,7 +887,74 @@ public abstract class ServerManager
      */
     public void send(ServerClient client, Packet packet)
     {
-        send(client, packet.getRawData());
+        // Without compression or encryption, the Packet's own buffer is sent as-is.
+        if(clients.contains(client)) encodeAndPush(Collections.singletonList(client), packet);
+        else System.out.println("] WARNING: Attempted to send data to unknown client!");
+    }
+    
+    /**
+     * Changes what happens to received data when an execution thread's queue is full.
+     * @param policy The {@link wrath.net.managers.OverflowPolicy} to use. Defaults to the "InboundOverflowPolicy" config option.
+     */
+    public void setInboundOverflowPolicy(OverflowPolicy policy)
+    {
+        this.inboundOverflowPolicy = policy;
+    }
+    
+    /**
+     * Changes what happens to sent data when a Client's outbound queue is full.
+     * @param policy The {@link wrath.net.managers.OverflowPolicy} to use. Defaults to the "OutboundOverflowPolicy" config option, or "disconnect-client" if it is not set.
+     */
+    public void setOutboundOverflowPolicy(OverflowPolicy policy)
+    {
+        this.outboundOverflowPolicy = policy;
+    }
+    
+    /**
+     * Changes when sent data is written to the socket.
+     * @param policy The {@link wrath.net.managers.FlushPolicy} to use. Defaults to the "FlushPolicy" config option.
+     */
+    public void setFlushPolicy(FlushPolicy policy)
+    {
+        this.flushPolicy = policy;
+    }
+    
+    /**
+     * Changes what the execution thread does while there are no events to process.
+     * @param strategy The {@link wrath.net.managers.WaitStrategy} to use. Defaults to the "ExecWaitStrategy" config option.
+     */
+    public void setWaitStrategy(WaitStrategy strategy)
+    {
+        this.waitStrategy = strategy;
+    }
+    
+    /**
+     * Stops the idle timer, if there is one.
+     */
+    private void stopTimer()
+    {
+        TimingWheel t = timer;
+        timer = null;
+        if(t != null) t.stop();
+    }
+    
+    /**
+     * Wakes the decode and execution threads so they notice the receive flag and exit.
+     */
+    private void stopWorkers()
+    {
+        for(DecodeWorker d : decoders)
+        {
+            d.stopped = true;
+            waitStrategy.signal(d.queue);
+        }
+        decoders = new DecodeWorker[0];
+        for(ExecWorker w : workers)
+        {
+            w.stopped = true;
+            waitStrategy.signal(w.queue);
+        }
+        workers = new ExecWorker[0];
     }
     
     /**
@@ -383,13 +966,13 @@ public abstract class ServerManager
         if(!isBound()) return;
         System.out.println("] Closing ServerSocket.");
         
-        ServerClient[] clis = new ServerClient[clients.size()];
-        clients.toArray(clis);
-        for(ServerClient c : clis)
-            if(c.isConnected()) c.disconnectClient();
+        // Clients that disconnect meanwhile are simply skipped by disconnectClient().
+        for(ServerClient c : clients) disconnectClient(c, true);
         clients.clear();
         
         recvFlag = true;
+        stopWorkers();
+        stopTimer();
         
         try{if(encryptKey != null) encryptKey.destroy();}catch(Exception e){}
         
@@ -399,15 +982,195 @@ public abstract class ServerManager
         System.out.println("] ServerSocket Closed.");
     }
     
-    private class ServerReceivedEvent
+    /**
+     * Class to represent one thread of a processing stage and the queue of events waiting for it.
+     */
+    private abstract class Stage implements Runnable
+    {
+        protected final ServerReceivedEvent current = new ServerReceivedEvent();
+        protected final AtomicInteger evictions = new AtomicInteger();
+        protected final RingBuffer<ServerReceivedEvent> queue;
+        protected final ConcurrentLinkedQueue<ServerReceivedEvent> parked = new ConcurrentLinkedQueue<>();
+        protected volatile boolean stopped = false;
+        protected final Thread thread;
+        
+        protected Stage(int capacity)
+        {
+            this.queue = new RingBuffer<>(capacity, ServerReceivedEvent::new);
+            this.thread = threadFactory.newThread(this);
+        }
+        
+        /**
+         * Takes the next event into {@link #current}, discarding received data that was evicted under DROP_OLDEST.
+         * Parked events are only taken once the queue is empty, since everything in the queue was there before them.
+         * @return Returns true if there was an event to process. Otherwise false.
+         */
+        protected boolean next()
+        {
+            ServerReceivedEvent event;
+            while((event = queue.peek()) != null)
+            {
+                current.set(event.type, event.client, event.packet, event.held, event.decoded);
+                event.set(0, null, null, null, false);
+                queue.advance();
+                if(!evicted()) return true;
+            }
+            while((event = parked.poll()) != null)
+            {
+                current.set(event.type, event.client, event.packet, event.held, event.decoded);
+                if(!evicted()) return true;
+            }
+            return false;
+        }
+        
+        /**
+         * Discards {@link #current} if it is received data and a thread feeding this stage found the queue full under DROP_OLDEST.
+         * @return Returns true if the event was discarded. Otherwise false.
+         */
+        private boolean evicted()
+        {
+            if(current.type != EVENT_RECEIVE || evictions.get() <= 0) return false;
+            evictions.decrementAndGet();
+            current.release();
+            return true;
+        }
+        
+        /**
+         * Processes one event on this stage's thread.
+         * @param e The {@link wrath.net.managers.ServerManager.ServerReceivedEvent} to process. It is not part of the queue.
+         */
+        protected abstract void process(ServerReceivedEvent e);
+    }
+    
+    /**
+     * Class to represent one decode thread and the queue of events waiting for it.
+     * Received data is decrypted and decompressed here, in parallel for different Clients, and then handed to the Client's execution thread in the order it was received.
+     */
+    private class DecodeWorker extends Stage
     {
-        public final ServerClient client;
-        public final Packet packet;
-
-        private ServerReceivedEvent(ServerClient c, Packet p)
+        private DecodeWorker(int capacity)
+        {
+            super(capacity);
+        }
+        
+        @Override
+        protected void process(ServerReceivedEvent e)
+        {
+            if(e.type != EVENT_RECEIVE || e.decoded || decode(e.client, e)) post(workers, e.type, e.client, e.packet, e.held, true);
+            e.set(0, null, null, null, false);
+        }
+        
+        @Override
+        public void run()
+        {
+            int idle = 0;
+            while(!stopped)
+            {
+                if(!next())
+                {
+                    evictions.set(0);
+                    waitStrategy.idle(idle, queue);
+                    if(idle < Integer.MAX_VALUE) idle++;
+                    continue;
+                }
+                idle = 0;
+                process(current);
+            }
+        }
+    }
+    
+    /**
+     * Class to represent one execution thread and the queue of events waiting for it.
+     * This is where all data is processed. This includes compression and encryption unless there are decode threads, and the onReceive(), onClientConnect(), and onClientDisconnect() methods.
+     */
+    private class ExecWorker extends Stage
+    {
+        private final HashSet<ServerClient> unflushed = new HashSet<>();
+        
+        private ExecWorker(int capacity)
+        {
+            super(capacity);
+        }
+        
+        @Override
+        protected void process(ServerReceivedEvent e)
+        {
+            if(e.type != EVENT_RECEIVE || e.decoded || decode(e.client, e)) execute(e.type, e.client, e.packet, e.held);
+            e.set(0, null, null, null, false);
+        }
+        
+        @Override
+        public void run()
+        {
+            int idle = 0;
+            int batch = 0;
+            while(!stopped)
+            {
+                if(!next())
+                {
+                    // Out of events, so write everything that was sent while processing them.
+                    if(!unflushed.isEmpty()) flushUnflushed();
+                    batch = 0;
+                    evictions.set(0);
+                    waitStrategy.idle(idle, queue);
+                    if(idle < Integer.MAX_VALUE) idle++;
+                    continue;
+                }
+                idle = 0;
+                process(current);
+                
+                // Under constant load the queue may never run dry, so also flush every "FlushBatchSize" events.
+                if(++batch >= flushBatchSize)
+                {
+                    if(!unflushed.isEmpty()) flushUnflushed();
+                    batch = 0;
+                }
+            }
+            flushUnflushed();
+        }
+        
+        /**
+         * Flushes every Client that was sent data since the last flush.
+         */
+        private void flushUnflushed()
+        {
+            for(ServerClient c : unflushed) flushData(c);
+            unflushed.clear();
+        }
+    }
+    
+    /**
+     * Pre-allocated queue slot describing one event for a decode or execution thread.
+     */
+    private static class ServerReceivedEvent
+    {
+        public int type;
+        public ServerClient client;
+        public boolean decoded;
+        public Packet held;
+        public Packet packet;
+        
+        /**
+         * Releases the event's Packets.
+         */
+        public void release()
+        {
+            if(packet != null) packet.release();
+            if(held != null) held.release();
+            packet = null;
+            held = null;
+        }
+        
+        /**
+         * Sets every field of the event.
+         */
+        public void set(int type, ServerClient client, Packet packet, Packet held, boolean decoded)
         {
-            this.client = c;
-            this.packet = p;
+            this.type = type;
+            this.client = client;
+            this.packet = packet;
+            this.held = held;
+            this.decoded = decoded;
         }
     }
 }
\ No newline at end of file
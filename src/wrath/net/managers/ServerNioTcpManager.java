@@ -0,0 +1,489 @@
+/**
+ * The MIT License (MIT)
+ * Wrath Net Engine Copyright (c) 2016 Trent Spears
+ */
+package wrath.net.managers;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import wrath.net.BufferPool;
+import wrath.net.ConnectionState;
+import wrath.net.Packet;
+import wrath.net.PooledBuffer;
+import wrath.net.Server;
+import wrath.net.ServerClient;
+
+/**
+ * Class to manage Server Connections using non-blocking TCP.
+ * Instead of one Thread per Client, all connections are multiplexed over a small, fixed set of {@link java.nio.channels.Selector} threads.
+ * Data a Client has not read yet waits in the connection's outbound buffer. Once that holds "OutboundQueueBytes" bytes (defaults to 4MB), the outbound {@link wrath.net.managers.OverflowPolicy} is applied.
+ * @author Trent Spears
+ */
+public class ServerNioTcpManager extends ServerManager
+{
+    private final ConcurrentHashMap<ServerClient, Connection> clientToConn = new ConcurrentHashMap<>();
+    private SelectorLoop[] loops = new SelectorLoop[0];
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private final int sendArraySize = Server.getServerConfig().getInt("TcpSendArraySize", 8192);
+    private final long queueBytes = Math.max(1, Server.getServerConfig().getInt("OutboundQueueBytes", 4194304));
+    private ServerSocketChannel svr;
+
+    /**
+     * Constructor.
+     * @param server The {@link wrath.net.Server} being managed.
+     */
+    public ServerNioTcpManager(Server server)
+    {
+        super(server);
+    }
+
+    @Override
+    protected synchronized void closeSocket()
+    {
+        try
+        {
+            svr.close();
+        }
+        catch(IOException ex)
+        {
+            System.err.println("] ERROR: Error while closing Server Socket! I/O Error!");
+        }
+
+        for(SelectorLoop loop : loops) loop.close();
+        clientToConn.clear();
+    }
+
+    @Override
+    protected synchronized void createSocket(String ip, int port) throws IOException
+    {
+        // Define Object
+        svr = ServerSocketChannel.open();
+
+        // Set Object Properties
+        try
+        {
+            svr.socket().setReceiveBufferSize(Server.getServerConfig().getInt("TcpRecvBufferSize", svr.socket().getReceiveBufferSize()));
+            svr.socket().setReuseAddress(Server.getServerConfig().getBoolean("TcpReuseAddress", true));
+        }
+        catch(SocketException e)
+        {
+            System.err.println("] ERROR: Could not set TCP ServerSocket properties! I/O Error!");
+        }
+
+        // Define Selector Threads
+        int threads = Server.getServerConfig().getInt("TcpSelectorThreads", Runtime.getRuntime().availableProcessors());
+        loops = new SelectorLoop[Math.max(1, threads)];
+        for(int i = 0; i < loops.length; i++)
+        {
+            loops[i] = new SelectorLoop(Selector.open());
+            loops[i].thread.setName("NetServerSelectorThread-" + i);
+            loops[i].thread.setDaemon(true);
+        }
+
+        // Define Receive Thread
+        this.recvThread = new Thread(() ->
+        {
+            while(isBound() && !recvFlag)
+            {
+                try
+                {
+                    SocketChannel ch = svr.accept();
+                    ch.configureBlocking(false);
+                    ch.socket().setTcpNoDelay(Server.getServerConfig().getBoolean("TcpNoDelay", true));
+                    ServerClient c = new ServerClient(server, ch.socket().getInetAddress(), ch.socket().getPort());
+                    loops[(nextLoop.getAndIncrement() & 0x7FFFFFFF) % loops.length].register(new Connection(c, ch));
+                }
+                catch(IOException ex)
+                {
+                    if(!recvFlag && isBound()) System.err.println("] ERROR: Could not connect Client, I/O Error!");
+                }
+            }
+        });
+
+        // Bind
+        int backlog = Server.getServerConfig().getInt("TcpBacklog", 0);
+        if("*".equals(ip)) svr.bind(new InetSocketAddress(port), backlog);
+        else svr.bind(new InetSocketAddress(InetAddress.getByName(ip), port), backlog);
+
+        for(SelectorLoop loop : loops) loop.thread.start();
+    }
+
+    /**
+     * Gets the {@link java.nio.channels.ServerSocketChannel} used by this Server.
+     * @return Returns the {@link java.nio.channels.ServerSocketChannel} used by this Server.
+     */
+    public ServerSocketChannel getRawSocket()
+    {
+        return svr;
+    }
+
+    @Override
+    public boolean isBound()
+    {
+        return svr != null && svr.isOpen() && svr.socket().isBound();
+    }
+
+    @Override
+    protected boolean isServerThread()
+    {
+        for(SelectorLoop loop : loops)
+            if(Thread.currentThread() == loop.thread) return true;
+        return super.isServerThread();
+    }
+
+    @Override
+    protected void pushData(ServerClient client, ByteBuffer data)
+    {
+        Connection conn = clientToConn.get(client);
+        if(conn == null)
+        {
+            System.out.println("] WARNING: Attempted to send data to unknown client!");
+            return;
+        }
+        if(conn.write(data.duplicate(), outboundOverflowPolicy(client)) == OverflowPolicy.DISCONNECT_CLIENT) disconnectSlowClient(client);
+    }
+
+    /**
+     * Shares one copy of the data between all recipients, and lets each Selector thread write to the connections it services.
+     * Under {@link wrath.net.managers.FlushPolicy#EXPLICIT}, the data waits for flush() instead.
+     */
+    @Override
+    protected void pushData(Collection<ServerClient> recipients, ByteBuffer data)
+    {
+        // The connections write the data later from other threads, so it is copied once into a buffer they can all hold on to.
+        int length = data.remaining();
+        PooledBuffer shared = BufferPool.allocate(length, pooledBuffers);
+        data.duplicate().get(shared.array(), 0, length);
+        
+        boolean flush = flushPolicy != FlushPolicy.EXPLICIT;
+        for(ServerClient c : recipients)
+        {
+            Connection conn = clientToConn.get(c);
+            if(conn == null) continue;
+            if(conn.queue(shared, length, flush, outboundOverflowPolicy(c)) == OverflowPolicy.DISCONNECT_CLIENT) disconnectSlowClient(c);
+        }
+        shared.release();
+        
+        if(flush)
+            for(SelectorLoop loop : loops)
+                if(!loop.flushes.isEmpty()) loop.selector.wakeup();
+    }
+
+    @Override
+    protected void flushData(ServerClient client)
+    {
+        Connection conn = clientToConn.get(client);
+        if(conn == null) return;
+        try
+        {
+            conn.flush();
+        }
+        catch(IOException e)
+        {
+            System.err.println("] ERROR: Could not send data to " + client.getClientIdentifier() + "! I/O Error!");
+            sendFailed(client);
+        }
+    }
+
+    @Override
+    protected void removeClient(ServerClient client)
+    {
+        Connection conn = clientToConn.remove(client);
+        if(conn != null) conn.close();
+    }
+
+    /**
+     * Class to hold the state of a single non-blocking Client connection.
+     */
+    private class Connection
+    {
+        private final SocketChannel channel;
+        private final ServerClient client;
+        private final FrameDecoder decoder = new FrameDecoder(Server.getServerConfig().getInt("TcpMaxFrameSize", 16777216), pooledBuffers);
+        private SelectionKey key;
+        private SelectorLoop loop;
+        private boolean closed = false;
+        private boolean flushQueued = false;
+        private final OutboundBuffer outbound = new OutboundBuffer(sendArraySize, pooledBuffers);
+        private int waiters = 0;
+
+        private Connection(ServerClient client, SocketChannel channel)
+        {
+            this.client = client;
+            this.channel = channel;
+        }
+
+        private synchronized void close()
+        {
+            closed = true;
+            if(waiters > 0) notifyAll();
+            try
+            {
+                if(key != null) key.cancel();
+                channel.close();
+                decoder.close();
+                outbound.clear();
+            }
+            catch(IOException ex)
+            {
+                System.err.println("] ERROR: Could not close connection from " + client.getClientIdentifier() + "! I/O Error!");
+            }
+        }
+
+        /**
+         * Writes as much queued data as the socket will accept without blocking, in one gathering write.
+         * Anything left over stays queued until the Selector reports the channel as writable again.
+         */
+        private synchronized void flush() throws IOException
+        {
+            flushQueued = false;
+            outbound.writeTo(channel);
+            interest();
+            if(waiters > 0 && outbound.pending() < queueBytes) notifyAll();
+        }
+
+        /**
+         * Asks the Selector to report the channel as writable only while data is waiting.
+         */
+        private void interest()
+        {
+            int ops = outbound.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+            if(key != null && key.isValid() && key.interestOps() != ops)
+            {
+                key.interestOps(ops);
+                loop.selector.wakeup();
+            }
+        }
+
+        /**
+         * Applies and counts the overflow policy if the outbound buffer holds "OutboundQueueBytes" bytes or more.
+         * The Selector thread never waits, since it is the one that empties the buffer.
+         * @return Returns the policy that was applied, or null if the buffer had room.
+         */
+        private OverflowPolicy makeRoom(OverflowPolicy policy)
+        {
+            if(outbound.pending() < queueBytes) return null;
+            if(policy == OverflowPolicy.BLOCK && Thread.currentThread() == loop.thread) return null;
+            outboundOverflows.increment(policy);
+            if(policy == OverflowPolicy.BLOCK)
+            {
+                // Make sure the Selector thread is writing, whatever the flush policy.
+                interest();
+                waiters++;
+                long deadline = System.nanoTime() + outboundBlockTimeout;
+                try
+                {
+                    while(!closed && outbound.pending() >= queueBytes)
+                    {
+                        long left = deadline - System.nanoTime();
+                        if(left <= 0)
+                        {
+                            // The Client has not read anything for too long.
+                            outboundOverflows.increment(OverflowPolicy.DISCONNECT_CLIENT);
+                            return OverflowPolicy.DISCONNECT_CLIENT;
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(this, left);
+                    }
+                }
+                catch(InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                finally
+                {
+                    waiters--;
+                }
+            }
+            else if(policy == OverflowPolicy.DROP_OLDEST) outbound.discardQueued();
+            return policy;
+        }
+
+        /**
+         * Queues a message whose payload is shared with other connections, and hands the connection to its Selector thread if it should be flushed.
+         * @return Returns the overflow policy that was applied, or null if the buffer had room.
+         */
+        private synchronized OverflowPolicy queue(PooledBuffer data, int length, boolean flush, OverflowPolicy policy)
+        {
+            OverflowPolicy overflow = makeRoom(policy);
+            if(closed || overflow == OverflowPolicy.DROP_NEWEST || overflow == OverflowPolicy.DISCONNECT_CLIENT) return overflow;
+            outbound.add(data, length);
+            if(flush && !flushQueued)
+            {
+                flushQueued = true;
+                loop.flushes.add(this);
+            }
+            return overflow;
+        }
+
+        /**
+         * Sends a message according to the {@link wrath.net.managers.FlushPolicy}.
+         * If the message may wait, it is copied into the outbound buffer, which is written once it holds "TcpSendArraySize" bytes or is flushed.
+         * Otherwise as much of it as the socket will accept is written without blocking, and only what the socket did not take is copied.
+         * @return Returns the overflow policy that was applied, or null if the buffer had room.
+         */
+        private synchronized OverflowPolicy write(ByteBuffer data, OverflowPolicy policy)
+        {
+            OverflowPolicy overflow = makeRoom(policy);
+            if(closed || overflow == OverflowPolicy.DROP_NEWEST || overflow == OverflowPolicy.DISCONNECT_CLIENT) return overflow;
+            int length = data.remaining();
+            try
+            {
+                if(!deferFlush(client)) outbound.write(channel, data);
+                else
+                {
+                    outbound.add(data);
+                    if(outbound.pending() < sendArraySize) return overflow;
+                    outbound.writeTo(channel);
+                }
+                interest();
+            }
+            catch(IOException e)
+            {
+                System.err.println("] ERROR: Could not send data to " + client.getClientIdentifier() + "! DataSize: " + length + "B");
+                sendFailed(client);
+            }
+            return overflow;
+        }
+    }
+
+    /**
+     * Class to represent one Selector Thread and the connections it services.
+     */
+    private class SelectorLoop
+    {
+        private final ConcurrentLinkedQueue<Connection> flushes = new ConcurrentLinkedQueue<>();
+        private final ConcurrentLinkedQueue<Connection> pending = new ConcurrentLinkedQueue<>();
+        private final ByteBuffer readBuf = ByteBuffer.allocateDirect(Server.getServerConfig().getInt("TcpClientRecvBufferSize", 1024));
+        private final Selector selector;
+        private final Thread thread;
+
+        private SelectorLoop(Selector selector)
+        {
+            this.selector = selector;
+            this.thread = new Thread(this::run);
+        }
+
+        private void close()
+        {
+            try
+            {
+                selector.wakeup();
+                selector.close();
+            }
+            catch(IOException e){}
+        }
+
+        private void register(Connection conn)
+        {
+            pending.add(conn);
+            selector.wakeup();
+        }
+
+        private void read(Connection conn) throws IOException
+        {
+            int len;
+            Packet rp;
+            while((len = conn.channel.read(readBuf)) > 0)
+            {
+                readBuf.flip();
+                while((rp = conn.decoder.decode(readBuf)) != null) receive(conn.client, rp);
+                readBuf.clear();
+            }
+
+            if(len < 0)
+            {
+                conn.key.cancel();
+                if(clients.contains(conn.client))
+                {
+                    System.err.println("] ERROR: Client " + conn.client.getClientIdentifier() + " unexpectedly disconnected!");
+                    disconnectClient(conn.client, false, ConnectionState.DISCONNECTED_CONNECTION_DROPPED);
+                }
+            }
+        }
+
+        private void run()
+        {
+            while(!recvFlag && selector.isOpen())
+            {
+                try
+                {
+                    selector.select();
+
+                    Connection conn;
+                    while((conn = pending.poll()) != null)
+                    {
+                        conn.loop = this;
+                        conn.key = conn.channel.register(selector, SelectionKey.OP_READ, conn);
+                        System.out.println("] Client connected from " + conn.client.getClientIdentifier() + ".");
+                        clientToConn.put(conn.client, conn);
+                        clients.add(conn.client);
+                        onClientConnect(conn.client);
+                    }
+
+                    // Write broadcasts queued for the connections of this thread.
+                    while((conn = flushes.poll()) != null)
+                    {
+                        try
+                        {
+                            conn.flush();
+                        }
+                        catch(CancelledKeyException e){}
+                        catch(IOException e)
+                        {
+                            if(clients.contains(conn.client))
+                            {
+                                System.err.println("] ERROR: Could not send data to " + conn.client.getClientIdentifier() + "! I/O Error!");
+                                sendFailed(conn.client);
+                                disconnectClient(conn.client, false, ConnectionState.DISCONNECTED_CONNECTION_DROPPED);
+                            }
+                        }
+                    }
+
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while(it.hasNext())
+                    {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        conn = (Connection) key.attachment();
+                        try
+                        {
+                            if(key.isWritable()) conn.flush();
+                            if(key.isValid() && key.isReadable()) read(conn);
+                        }
+                        catch(CancelledKeyException e){}
+                        catch(IOException e)
+                        {
+                            if(clients.contains(conn.client))
+                            {
+                                System.err.println("] ERROR: Could not read data from " + conn.client.getClientIdentifier() + "! I/O Error!");
+                                disconnectClient(conn.client, false, ConnectionState.DISCONNECTED_CONNECTION_DROPPED);
+                            }
+                        }
+                    }
+                }
+                catch(IOException e)
+                {
+                    if(!recvFlag && isBound()) System.err.println("] ERROR: Selector failure on " + thread.getName() + "! I/O Error!");
+                }
+                catch(Exception e)
+                {
+                    if(selector.isOpen()) System.err.println("] ERROR: Unexpected error on " + thread.getName() + "!");
+                }
+            }
+        }
+    }
+}
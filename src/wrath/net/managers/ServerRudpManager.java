@@ -4,21 +4,127 @@
  */
 package wrath.net.managers;
 
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import wrath.net.ConnectionState;
+import wrath.net.Packet;
 import wrath.net.Server;
+import wrath.net.ServerClient;
 
 /**
  * Class to manage Server Connections using RUDP.
+ * Each Client gets its own {@link wrath.net.managers.RudpSession}, and a timer thread resends lost datagrams every "RudpTickTime" ms.
+ * Messages waiting for room in a Client's send window are bounded by "OutboundQueueCapacity", beyond which the outbound {@link wrath.net.managers.OverflowPolicy} is applied.
  * @author Trent Spears
  */
 public class ServerRudpManager extends ServerUdpManager
 {
+    private final ConcurrentHashMap<ServerClient, RudpSession> sessions = new ConcurrentHashMap<>();
+    private Thread timerThread;
+
     /**
      * Constructor.
-     * @param server The {@link wrath.net.Server} being managed. 
+     * @param server The {@link wrath.net.Server} being managed.
      */
-    public ServerRudpManager(Server server) 
+    public ServerRudpManager(Server server)
     {
         super(server);
     }
-    
+
+    @Override
+    protected boolean acceptClient(DatagramPacket packet)
+    {
+        // Late datagrams from a Client that was just disconnected must not connect it again.
+        return RudpSession.opensSession(packet.getData(), packet.getOffset(), packet.getLength());
+    }
+
+    @Override
+    protected synchronized void createSocket(String ip, int port) throws IOException
+    {
+        super.createSocket(ip, port);
+
+        final long tick = Server.getServerConfig().getInt("RudpTickTime", 10);
+        this.timerThread = new Thread(() ->
+        {
+            while(isBound() && !recvFlag)
+            {
+                for(RudpSession s : sessions.values()) s.tick();
+                try
+                {
+                    Thread.sleep(tick);
+                }
+                catch(InterruptedException e)
+                {
+                    break;
+                }
+            }
+        });
+        timerThread.setName("NetServerRudpTimerThread");
+        timerThread.setDaemon(true);
+        timerThread.start();
+    }
+
+    @Override
+    protected void onClientConnect(final ServerClient c)
+    {
+        sessions.put(c, new RudpSession(Server.getServerConfig())
+        {
+            @Override
+            protected void deliver(Packet p)
+            {
+                ServerRudpManager.this.receive(c, p);
+            }
+
+            @Override
+            protected void dropped()
+            {
+                System.err.println("] WARNING: Client " + c.getClientIdentifier() + " stopped responding.");
+                disconnectClient(c, false, ConnectionState.DISCONNECTED_CONNECTION_DROPPED);
+            }
+
+            @Override
+            protected void transmit(byte[] data, int length)
+            {
+                try
+                {
+                    getRawSocket(c).send(new DatagramPacket(data, 0, length, c.getAddress(), c.getPort()));
+                }
+                catch(IOException ex)
+                {
+                    System.err.println("] ERROR:  Could not send data to " + c.getClientIdentifier() + "! DataSize: " + length + "B");
+                    sendFailed(c);
+                }
+            }
+        });
+        super.onClientConnect(c);
+    }
+
+    @Override
+    protected void onDatagram(ServerClient client, DatagramPacket packet)
+    {
+        RudpSession s = sessions.get(client);
+        if(s != null) s.receive(packet.getData(), packet.getOffset(), packet.getLength(), pooledBuffers);
+    }
+
+    @Override
+    protected void pushData(ServerClient client, ByteBuffer data)
+    {
+        RudpSession s = sessions.get(client);
+        if(s == null)
+        {
+            System.out.println("] WARNING: Attempted to send data to unknown client!");
+            return;
+        }
+        if(s.send(data, outboundOverflowPolicy(client), outboundOverflows, outboundBlockTimeout) == OverflowPolicy.DISCONNECT_CLIENT) disconnectSlowClient(client);
+    }
+
+    @Override
+    protected void removeClient(ServerClient client)
+    {
+        super.removeClient(client);
+        RudpSession s = sessions.remove(client);
+        if(s != null) s.close();
+    }
 }
@@ -4,25 +4,56 @@
  */
 package wrath.net.managers;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import wrath.net.BufferPool;
+import wrath.net.ConnectionState;
 import wrath.net.Packet;
+import wrath.net.PooledBuffer;
 import wrath.net.Server;
 import wrath.net.ServerClient;
 
 /**
  * Class to manage Server Connections using TCP.
+ * Each Client has its own bounded queue of outgoing messages ("OutboundQueueCapacity", defaults to 1024), written to its socket by a pool of writer threads.
+ * What happens when a queue is full is decided by the outbound {@link wrath.net.managers.OverflowPolicy}.
+ * The pool has a fixed number of "WriterThreads" threads (defaults to the number of processors). A queue with messages waits in line for the next free writer, in a line of up to "WriterQueueCapacity" queues (defaults to 65536).
+ * Messages are written in pieces of "TcpSendArraySize" bytes (defaults to 8192). A Client whose socket has not taken a piece for "TcpWriteTimeout" milliseconds (defaults to 2000, 0 never times out) is disconnected, so Clients that stopped reading cannot keep the writers blocked, while large messages to Clients that read slowly still get through.
+ * A blocked socket only takes data again once about half of its send buffer is free, so the timeout should give a slow Client time to read that much.
+ * Sending only copies the message into the queue, so a Client that reads slowly never holds up sends to other Clients.
  * @author Trent Spears
  */
 public class ServerTcpManager extends ServerManager
 {
-    private final HashMap<ServerClient, Socket> clientToSock = new HashMap<>();
+    private final ConcurrentHashMap<ServerClient, Socket> clientToSock = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<ServerClient, Outbound> clientToOut = new ConcurrentHashMap<>();
+    private final int queueCapacity = Math.max(1, Server.getServerConfig().getInt("OutboundQueueCapacity", 1024));
+    private final Set<Outbound> outbounds = ConcurrentHashMap.newKeySet();
+    private final long writeTimeout = TimeUnit.MILLISECONDS.toNanos(Math.max(0, Server.getServerConfig().getInt("TcpWriteTimeout", 2000)));
+    private final int writeChunk = Math.max(1, Server.getServerConfig().getInt("TcpSendArraySize", 8192));
     private ServerSocket svr;
+    private ExecutorService writers;
+    private volatile TimingWheel writeTimer = null;
     
     /**
      * Constructor.
@@ -44,6 +75,34 @@ public class ServerTcpManager extends ServerManager
         {
             System.err.println("] ERROR: Error while closing Server Socket! I/O Error!");
         }
+        
+        // Messages already queued, such as termination calls, are still written.
+        writers.shutdown();
+        if(writeTimer != null)
+        {
+            writeTimer.stop();
+            writeTimer = null;
+        }
+    }
+    
+    /**
+     * Disconnects the Clients whose socket has not taken any data from a writer for longer than the "TcpWriteTimeout", and schedules the next check. Runs on the write timer thread.
+     * @param t The {@link wrath.net.managers.TimingWheel} the check runs on. Once it is stopped or replaced, no more checks are scheduled.
+     */
+    private void checkWriters(TimingWheel t)
+    {
+        if(t != writeTimer) return;
+        long now = System.nanoTime();
+        for(Outbound o : outbounds)
+        {
+            long progress = o.lastProgress;
+            if(progress == 0 || now - progress < writeTimeout) continue;
+            System.err.println("] WARNING: Client " + o.client.getClientIdentifier() + " has not read any data for too long, disconnecting.");
+            // Closing the socket wakes the writer blocked in it.
+            o.fail();
+            if(clients.contains(o.client)) disconnectClient(o.client, false, ConnectionState.DISCONNECTED_CONNECTION_DROPPED);
+        }
+        t.schedule(() -> checkWriters(t), writeTimeout / 2, TimeUnit.NANOSECONDS);
     }
     
     @Override
@@ -63,6 +122,27 @@ public class ServerTcpManager extends ServerManager
             System.err.println("] ERROR: Could not set TCP ServerSocket properties! I/O Error!");
         }
         
+        // Define Writer Threads
+        // A queue is handed to the pool at most once at a time, so the line of waiting queues never holds more than one entry per Client.
+        final AtomicInteger writerCount = new AtomicInteger();
+        int writerThreads = Math.max(1, Server.getServerConfig().getInt("WriterThreads", Runtime.getRuntime().availableProcessors()));
+        int writerQueueCapacity = Math.max(1, Server.getServerConfig().getInt("WriterQueueCapacity", 65536));
+        writers = new ThreadPoolExecutor(writerThreads, writerThreads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(writerQueueCapacity), (r) ->
+        {
+            Thread t = threadFactory.newThread(r);
+            t.setName("NetServerWriterThread-" + writerCount.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        
+        // Start the Write Timer
+        if(writeTimeout > 0)
+        {
+            TimingWheel t = new TimingWheel("NetServerWriteTimerThread", Math.max(1, TimeUnit.NANOSECONDS.toMillis(writeTimeout) / 8), TimeUnit.MILLISECONDS, 64);
+            writeTimer = t;
+            t.schedule(() -> checkWriters(t), writeTimeout / 2, TimeUnit.NANOSECONDS);
+        }
+        
         // Define Receive Thread
         this.recvThread = new Thread(() ->
         {
@@ -71,42 +151,54 @@ public class ServerTcpManager extends ServerManager
                 try
                 {
                     Socket s = svr.accept();
+                    // Messages are collected in the stream's buffer and written to the socket together when it is flushed.
+                    OutputStream out = new BufferedOutputStream(s.getOutputStream(), writeChunk);
                     ServerClient c = new ServerClient(server, s.getInetAddress(), s.getPort());
-                    Thread client = new Thread(() ->
+                    Outbound o = new Outbound(c, s, out);
+                    outbounds.add(o);
+                    Thread client = threadFactory.newThread(() ->
                     {
                         System.out.println("] Client connected from " + c.getClientIdentifier() + ".");
                         clientToSock.put(c, s);
+                        clientToOut.put(c, o);
                         clients.add(c);
                         
                         onClientConnect(c);
                         
-                        final byte[] buf = new byte[Server.getServerConfig().getInt("TcpClientRecvBufferSize", 1024)];
-                        byte[] rbuf;
-                        while(!recvFlag)
+                        final FrameDecoder decoder = new FrameDecoder(Server.getServerConfig().getInt("TcpMaxFrameSize", 16777216), pooledBuffers);
+                        Packet rp;
+                        try
                         {
-                            try
+                            final InputStream in = new BufferedInputStream(s.getInputStream(), Server.getServerConfig().getInt("TcpClientRecvBufferSize", 1024));
+                            while(!recvFlag)
                             {
-                                int len = s.getInputStream().read(buf);
-                                if(len < 1 || s.isClosed()) break;
-                                rbuf = new byte[len];
-                                System.arraycopy(buf, 0, rbuf, 0, len);
+                                try
+                                {
+                                    rp = decoder.read(in);
+                                }
+                                catch(EOFException e)
+                                {
+                                    break;
+                                }
+                                catch(IOException e)
+                                {
+                                    if(c.isConnected() && !s.isClosed() && !recvFlag && isBound()) System.err.println("] ERROR: Could not read data from " + c.getClientIdentifier() + "! I/O Error!");
+                                    break;
+                                }
+                                receive(c, rp);
                             }
-                            catch(IOException e)
-                            {
-                                if(!c.isConnected()) break;
-                                else if(!recvFlag && isBound()) System.err.println("] ERROR: Could not read data from " + c.getClientIdentifier() + "! I/O Error!");
-                                continue;
-                            }
-                            receive(c, new Packet(rbuf));
                         }
+                        catch(IOException e)
+                        {
+                            System.err.println("] ERROR: Could not open input stream from " + c.getClientIdentifier() + "! I/O Error!");
+                        }
+                        decoder.close();
                         
                         if(clients.contains(c))
-                            try
-                            {
-                                System.err.println("] ERROR: Client " + c.getClientIdentifier() + " unexpectedly disconnected!");
-                                s.close();
-                            }
-                            catch(IOException e){}
+                        {
+                            System.err.println("] ERROR: Client " + c.getClientIdentifier() + " unexpectedly disconnected!");
+                            disconnectClient(c, false, ConnectionState.DISCONNECTED_CONNECTION_DROPPED);
+                        }
                     });
                     client.setDaemon(true);
                     client.start();
@@ -143,42 +235,327 @@ public class ServerTcpManager extends ServerManager
         return svr != null && svr.isBound() && !svr.isClosed();
     }
 
+    /**
+     * Copies the remaining bytes of a buffer into a pooled buffer that can be queued.
+     */
+    private PooledBuffer copy(ByteBuffer data)
+    {
+        int length = data.remaining();
+        PooledBuffer r = BufferPool.allocate(length, pooledBuffers);
+        data.duplicate().get(r.array(), 0, length);
+        return r;
+    }
+    
     @Override
-    protected synchronized void pushData(ServerClient client, byte[] data)
+    protected void pushData(ServerClient client, ByteBuffer data)
     {
-        if(clientToSock.containsKey(client))
+        Outbound o = clientToOut.get(client);
+        if(o == null)
         {
-            Socket s = clientToSock.get(client);
-            try
-            {
-                s.getOutputStream().write(data);
-                s.getOutputStream().flush();
-            }
-            catch(IOException e)
-            {
-                System.err.println("] ERROR: Could not send data to " + client.getClientIdentifier() + "! DataSize: " + data.length + "B");
-            }
+            System.out.println("] WARNING: Attempted to send data to unknown client!");
+            return;
+        }
+        if(o.add(copy(data), data.remaining(), !deferFlush(client), outboundOverflowPolicy(client)) == OverflowPolicy.DISCONNECT_CLIENT) disconnectSlowClient(client);
+    }
+    
+    @Override
+    protected void flushData(ServerClient client)
+    {
+        Outbound o = clientToOut.get(client);
+        if(o != null) o.flush();
+    }
+    
+    @Override
+    protected void pushData(Collection<ServerClient> recipients, ByteBuffer data)
+    {
+        // Every queue holds a reference to the same copy.
+        int length = data.remaining();
+        PooledBuffer shared = copy(data);
+        for(ServerClient c : recipients)
+        {
+            Outbound o = clientToOut.get(c);
+            if(o == null) continue;
+            if(o.add(shared.retain(), length, !deferFlush(c), outboundOverflowPolicy(c)) == OverflowPolicy.DISCONNECT_CLIENT) disconnectSlowClient(c);
         }
-        else System.out.println("] WARNING: Attempted to send data to unknown client!");
+        shared.release();
     }
     
     @Override
-    protected synchronized void removeClient(ServerClient client)
+    protected void removeClient(ServerClient client)
     {
-        if(!clientToSock.containsKey(client)) return;
-        Socket s = clientToSock.get(client);
-        clientToSock.remove(client);
+        Socket s = clientToSock.remove(client);
+        Outbound o = clientToOut.remove(client);
+        if(s == null) return;
         try
         {
-            if(s != null)
-            {
-                s.shutdownInput();
-                s.close();
-            }
+            s.shutdownInput();
+            // The writer closes the socket once everything queued, such as the termination call, has been written.
+            if(o != null) o.shutdown();
+            else s.close();
         }
         catch(IOException ex)
         {
             System.err.println("] ERROR: Could not close connection from " + client.getClientIdentifier() + "! I/O Error!");
         }
     }
+    
+    /**
+     * Class to hold the queue of messages waiting to be written to one Client, and to write them on a writer thread.
+     * At most one writer thread works on a queue at a time, so messages are written in the order they were sent.
+     */
+    private class Outbound implements Runnable
+    {
+        private final ServerClient client;
+        private final ByteBuffer header = ByteBuffer.allocate(FrameDecoder.MAX_HEADER_LENGTH);
+        private final OutputStream out;
+        private final Socket socket;
+        
+        private PooledBuffer[] bufs = new PooledBuffer[16];
+        private int[] lengths = new int[16];
+        private int head = 0;
+        private int size = 0;
+        
+        private boolean closed = false;
+        private boolean closing = false;
+        private boolean flushWanted = false;
+        private boolean scheduled = false;
+        // When the socket last took data from the writer, or 0 while nothing is being written.
+        private volatile long lastProgress = 0;
+        
+        private Outbound(ServerClient client, Socket socket, OutputStream out)
+        {
+            this.client = client;
+            this.out = out;
+            this.socket = socket;
+        }
+        
+        /**
+         * Queues a message. If the queue is full, the specified policy is applied and counted.
+         * @param buf The {@link wrath.net.PooledBuffer} holding the message from index 0. One reference is handed over to the queue.
+         * @param length The length of the message.
+         * @param flush If true, the socket is flushed once the writer runs out of messages. If false, the message may also wait in the queue until the next flush, unless the queue is half full.
+         * @param policy The {@link wrath.net.managers.OverflowPolicy} to apply if the queue is full.
+         * @return Returns the policy that was applied, or null if the queue had room.
+         */
+        private OverflowPolicy add(PooledBuffer buf, int length, boolean flush, OverflowPolicy policy)
+        {
+            OverflowPolicy overflow = null;
+            synchronized(this)
+            {
+                if(!closed && !closing && size == queueCapacity)
+                {
+                    overflow = policy;
+                    outboundOverflows.increment(policy);
+                    if(policy == OverflowPolicy.BLOCK)
+                    {
+                        long deadline = System.nanoTime() + outboundBlockTimeout;
+                        try
+                        {
+                            while(!closed && !closing && size == queueCapacity)
+                            {
+                                long left = deadline - System.nanoTime();
+                                if(left <= 0)
+                                {
+                                    // The Client has not read anything for too long.
+                                    overflow = OverflowPolicy.DISCONNECT_CLIENT;
+                                    outboundOverflows.increment(overflow);
+                                    break;
+                                }
+                                TimeUnit.NANOSECONDS.timedWait(this, left);
+                            }
+                        }
+                        catch(InterruptedException e)
+                        {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    else if(policy == OverflowPolicy.DROP_OLDEST)
+                    {
+                        // Messages are taken out of the queue before they are written, so the oldest one has not been started.
+                        bufs[head].release();
+                        bufs[head] = null;
+                        head = (head + 1) % bufs.length;
+                        size--;
+                    }
+                }
+                if(closed || closing || size == queueCapacity)
+                {
+                    buf.release();
+                    return overflow;
+                }
+                
+                if(size == bufs.length)
+                {
+                    // Unroll the ring into arrays twice the size.
+                    PooledBuffer[] b = new PooledBuffer[Math.min(queueCapacity, size * 2)];
+                    int[] l = new int[b.length];
+                    for(int i = 0; i < size; i++)
+                    {
+                        b[i] = bufs[(head + i) % bufs.length];
+                        l[i] = lengths[(head + i) % bufs.length];
+                    }
+                    bufs = b;
+                    lengths = l;
+                    head = 0;
+                }
+                int tail = (head + size) % bufs.length;
+                bufs[tail] = buf;
+                lengths[tail] = length;
+                size++;
+                if(flush) flushWanted = true;
+                if(scheduled || (!flushWanted && size < queueCapacity / 2)) return overflow;
+                scheduled = true;
+            }
+            schedule();
+            return overflow;
+        }
+        
+        /**
+         * Drops every queued message and closes the socket.
+         */
+        private void fail()
+        {
+            outbounds.remove(this);
+            synchronized(this)
+            {
+                closed = true;
+                scheduled = false;
+                for(int i = 0; i < size; i++) bufs[(head + i) % bufs.length].release();
+                Arrays.fill(bufs, null);
+                size = 0;
+                notifyAll();
+            }
+            try
+            {
+                socket.close();
+            }
+            catch(IOException e){}
+        }
+        
+        /**
+         * Asks the writer to flush the socket once it runs out of messages.
+         */
+        private void flush()
+        {
+            synchronized(this)
+            {
+                if(closed) return;
+                flushWanted = true;
+                if(scheduled) return;
+                scheduled = true;
+            }
+            schedule();
+        }
+        
+        @Override
+        public void run()
+        {
+            while(true)
+            {
+                PooledBuffer buf = null;
+                int length = 0;
+                boolean close = false;
+                synchronized(this)
+                {
+                    if(closed) return;
+                    if(size > 0)
+                    {
+                        buf = bufs[head];
+                        length = lengths[head];
+                        bufs[head] = null;
+                        head = (head + 1) % bufs.length;
+                        if(size-- == queueCapacity) notifyAll();
+                    }
+                    else if(flushWanted || closing)
+                    {
+                        flushWanted = false;
+                        close = closing;
+                    }
+                    else
+                    {
+                        scheduled = false;
+                        return;
+                    }
+                }
+                
+                lastProgress = System.nanoTime();
+                try
+                {
+                    if(buf != null)
+                    {
+                        header.clear();
+                        FrameDecoder.writeHeader(length, header);
+                        out.write(header.array(), 0, header.position());
+                        for(int off = 0; off < length; off += writeChunk)
+                        {
+                            out.write(buf.array(), off, Math.min(writeChunk, length - off));
+                            lastProgress = System.nanoTime();
+                        }
+                    }
+                    else
+                    {
+                        out.flush();
+                        if(close)
+                        {
+                            fail();
+                            return;
+                        }
+                    }
+                }
+                catch(IOException e)
+                {
+                    if(!closing)
+                    {
+                        System.err.println("] ERROR: Could not send data to " + client.getClientIdentifier() + "! I/O Error!");
+                        sendFailed(client);
+                    }
+                    fail();
+                    return;
+                }
+                finally
+                {
+                    lastProgress = 0;
+                    if(buf != null) buf.release();
+                }
+            }
+        }
+        
+        /**
+         * Hands the queue to a writer thread. If the writers were already shut down, the queue is dropped.
+         */
+        private void schedule()
+        {
+            try
+            {
+                writers.execute(this);
+            }
+            catch(RejectedExecutionException e)
+            {
+                fail();
+            }
+        }
+        
+        /**
+         * Stops accepting messages, and closes the socket once the queued ones have been written.
+         */
+        private void shutdown()
+        {
+            boolean abort;
+            synchronized(this)
+            {
+                if(closed || closing) return;
+                closing = true;
+                notifyAll();
+                // A full queue means the Client stopped reading, so the writer may never get through it.
+                abort = size == queueCapacity;
+                if(!abort)
+                {
+                    if(scheduled) return;
+                    scheduled = true;
+                }
+            }
+            if(abort) fail();
+            else schedule();
+        }
+    }
 }
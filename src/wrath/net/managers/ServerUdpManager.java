@@ -10,19 +10,28 @@ import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketException;
-import java.util.HashMap;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import wrath.net.BufferPool;
 import wrath.net.Packet;
+import wrath.net.PooledBuffer;
 import wrath.net.Server;
 import wrath.net.ServerClient;
 
 /**
  * Class to manage Server Connections using UDP.
+ * With "UdpReceiveSockets" set above 1, that many sockets are bound to the same port with SO_REUSEPORT, each read by its own receive thread.
+ * The kernel spreads incoming datagrams over the sockets by the sender's address, so each Client's datagrams keep arriving at the same socket, in order.
+ * All sockets share one table of Clients, so a Client is the same {@link wrath.net.ServerClient} whichever socket it is seen on.
+ * Where SO_REUSEPORT is not supported, a single socket is used.
  * @author Trent Spears
  */
 public class ServerUdpManager extends ServerManager
 {
-    private final HashMap<String, ServerClient> idenToClient = new HashMap<>();
+    private final AddressTable addrToClient = new AddressTable();
     private DatagramSocket svr = null;
+    private DatagramSocket[] sockets = new DatagramSocket[0];
     
     /**
      * Constructor.
@@ -36,96 +45,208 @@ public class ServerUdpManager extends ServerManager
     @Override
     protected synchronized void closeSocket()
     {
-        svr.close();
+        for(DatagramSocket s : sockets) s.close();
+        addrToClient.clear();
     }
     
-    @Override
-    protected synchronized void createSocket(String ip, int port) throws IOException
+    /**
+     * Sets the configured properties of a socket.
+     */
+    private void configure(DatagramSocket s)
     {
-        // Define Object
-        if("*".equals(ip)) svr = new DatagramSocket(new InetSocketAddress(port));
-        else svr = new DatagramSocket(new InetSocketAddress(InetAddress.getByName(ip), port));
-        
-        // Set Object Properties
         try
         {
-            svr.setReceiveBufferSize(Server.getServerConfig().getInt("UdpRecvBufferSize", svr.getReceiveBufferSize()));
-            svr.setBroadcast(Server.getServerConfig().getBoolean("UdpSBroadcast", svr.getBroadcast()));
-            svr.setSendBufferSize(Server.getServerConfig().getInt("UdpSendBufferSize", svr.getSendBufferSize()));
-            svr.setReuseAddress(Server.getServerConfig().getBoolean("UdpReuseAddress", svr.getReuseAddress()));
-            svr.setTrafficClass(Server.getServerConfig().getInt("UdpTrafficClass", svr.getTrafficClass()));
+            s.setReceiveBufferSize(Server.getServerConfig().getInt("UdpRecvBufferSize", s.getReceiveBufferSize()));
+            s.setBroadcast(Server.getServerConfig().getBoolean("UdpSBroadcast", s.getBroadcast()));
+            s.setSendBufferSize(Server.getServerConfig().getInt("UdpSendBufferSize", s.getSendBufferSize()));
+            s.setReuseAddress(Server.getServerConfig().getBoolean("UdpReuseAddress", s.getReuseAddress()));
+            s.setTrafficClass(Server.getServerConfig().getInt("UdpTrafficClass", s.getTrafficClass()));
         }
         catch(SocketException ex)
         {
             System.err.println("] ERROR:  Could not set UDP Socket properties! I/O Error!");
         }
+    }
+    
+    @Override
+    protected synchronized void createSocket(String ip, int port) throws IOException
+    {
+        InetSocketAddress addr = "*".equals(ip) ? new InetSocketAddress(port) : new InetSocketAddress(InetAddress.getByName(ip), port);
+        int count = Math.max(1, Server.getServerConfig().getInt("UdpReceiveSockets", 1));
         
-        // Define Receive Thread
-        this.recvThread = new Thread(() ->
-        {
-            final byte[] buf = new byte[Server.getServerConfig().getInt("UdpClientRecvBufferSize", 512)];
-            final DatagramPacket packet = new DatagramPacket(buf, buf.length);
-            byte[] rbuf;
-            while(svr.isBound() && !recvFlag)
+        // Define Objects
+        if(count > 1)
+            try(DatagramChannel probe = DatagramChannel.open())
             {
-                try
+                if(!probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT))
                 {
-                    svr.receive(packet);
-                    String ident = packet.getAddress().toString() + ":" + packet.getPort();
-                    if(!idenToClient.containsKey(ident))
-                    {
-                        ServerClient newClient = new ServerClient(server, packet.getAddress(), packet.getPort());
-                        System.out.println("] Client connected from " + newClient.getClientIdentifier() + ".");
-                        clients.add(newClient);
-                        idenToClient.put(ident, newClient);
-                        onClientConnect(newClient);
-                    }
-                    else
-                    {
-                        rbuf = new byte[packet.getLength()];
-                        System.arraycopy(packet.getData(), 0, rbuf, 0, packet.getLength());
-                        receive(idenToClient.get(ident), new Packet(rbuf));
-                    }
+                    System.err.println("] WARNING: SO_REUSEPORT is not supported on this platform, using one UDP socket.");
+                    count = 1;
                 }
-                catch(IOException ex)
+            }
+        if(count == 1)
+        {
+            svr = new DatagramSocket(addr);
+            configure(svr);
+            sockets = new DatagramSocket[]{svr};
+        }
+        else
+        {
+            DatagramSocket[] s = new DatagramSocket[count];
+            try
+            {
+                for(int i = 0; i < count; i++)
                 {
-                    if(!recvFlag && isBound()) System.err.println("] ERROR:  Could not read data from UDP client! I/O Error!");
+                    DatagramChannel ch = DatagramChannel.open();
+                    ch.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                    s[i] = ch.socket();
+                    configure(s[i]);
+                    ch.bind(addr);
                 }
             }
-        });
+            catch(IOException e)
+            {
+                for(DatagramSocket d : s) if(d != null) d.close();
+                throw e;
+            }
+            svr = s[0];
+            sockets = s;
+        }
+        
+        // Define Receive Threads
+        this.recvThread = new Thread(() -> receiveLoop(sockets[0]));
+        for(int i = 1; i < sockets.length; i++)
+        {
+            final DatagramSocket s = sockets[i];
+            Thread t = new Thread(() -> receiveLoop(s));
+            t.setName("NetServerRecvThread-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+    
+    /**
+     * Checks if a datagram from an unknown address may create a new {@link wrath.net.ServerClient}.
+     * @param packet The {@link java.net.DatagramPacket} that was received.
+     * @return Returns true if the sender should be connected as a new Client. Otherwise false.
+     */
+    protected boolean acceptClient(DatagramPacket packet)
+    {
+        return true;
     }
     
     /**
      * Gets the {@link java.net.DatagramSocket} used by this Server.
-     * @return Returns the {@link java.net.DatagramSocket} used by this Server.
+     * @return Returns the {@link java.net.DatagramSocket} used by this Server. With several receive sockets, this is the first one.
      */
     public DatagramSocket getRawSocket()
     {
         return svr;
     }
     
+    /**
+     * Gets every {@link java.net.DatagramSocket} bound by this Server, one per receive thread.
+     * @return Returns a copy of the array of {@link java.net.DatagramSocket}s used by this Server.
+     */
+    public DatagramSocket[] getRawSockets()
+    {
+        return sockets.clone();
+    }
+    
+    /**
+     * Gets the socket data for the specified Client is sent from.
+     * All sockets are bound to the same address and port, so the Client cannot tell them apart; spreading Clients over them spreads the locking inside the sockets.
+     * @param client The {@link wrath.net.ServerClient} to send data to.
+     * @return Returns the {@link java.net.DatagramSocket} to send from.
+     */
+    protected DatagramSocket getRawSocket(ServerClient client)
+    {
+        DatagramSocket[] s = sockets;
+        if(s.length == 1) return s[0];
+        int h = client.hashCode();
+        return s[((h ^ (h >>> 16)) & 0x7FFFFFFF) % s.length];
+    }
+    
     @Override
     public boolean isBound()
     {
         return svr != null && svr.isBound() && !svr.isClosed();
     }
 
+    /**
+     * Handles a datagram received from a connected {@link wrath.net.ServerClient}. Called on the receive thread.
+     * @param client The {@link wrath.net.ServerClient} the datagram came from.
+     * @param packet The {@link java.net.DatagramPacket} that was received. Its array is re-used once this returns.
+     */
+    protected void onDatagram(ServerClient client, DatagramPacket packet)
+    {
+        PooledBuffer rbuf = BufferPool.allocate(packet.getLength(), pooledBuffers);
+        System.arraycopy(packet.getData(), packet.getOffset(), rbuf.array(), 0, packet.getLength());
+        receive(client, new Packet(rbuf, packet.getLength()));
+    }
+    
+    /**
+     * Body of a receive thread. Reads datagrams from one socket until the Server is unbound.
+     * @param sock The {@link java.net.DatagramSocket} to read from.
+     */
+    private void receiveLoop(DatagramSocket sock)
+    {
+        final byte[] buf = new byte[Server.getServerConfig().getInt("UdpClientRecvBufferSize", 512)];
+        final DatagramPacket packet = new DatagramPacket(buf, buf.length);
+        while(sock.isBound() && !sock.isClosed() && !recvFlag)
+        {
+            try
+            {
+                sock.receive(packet);
+                ServerClient c = addrToClient.get(packet.getAddress(), packet.getPort());
+                if(c == null)
+                {
+                    if(!acceptClient(packet)) continue;
+                    ServerClient newClient = new ServerClient(server, packet.getAddress(), packet.getPort());
+                    // Another receive thread may have connected the same sender in the meantime.
+                    if((c = addrToClient.putIfAbsent(newClient)) != null)
+                    {
+                        onDatagram(c, packet);
+                        continue;
+                    }
+                    System.out.println("] Client connected from " + newClient.getClientIdentifier() + ".");
+                    clients.add(newClient);
+                    onClientConnect(newClient);
+                    // The first datagram is normally the Client's one byte greeting; anything else is real data.
+                    if(packet.getLength() != 1 || buf[0] != 0) onDatagram(newClient, packet);
+                }
+                else onDatagram(c, packet);
+            }
+            catch(IOException ex)
+            {
+                if(!recvFlag && isBound()) System.err.println("] ERROR:  Could not read data from UDP client! I/O Error!");
+            }
+        }
+    }
+
     @Override
-    protected synchronized void pushData(ServerClient client, byte[] data)
+    protected void pushData(ServerClient client, ByteBuffer data)
     {
         try
         {
-            svr.send(new DatagramPacket(data, data.length, client.getAddress(), client.getPort()));
+            if(data.hasArray()) getRawSocket(client).send(new DatagramPacket(data.array(), data.arrayOffset() + data.position(), data.remaining(), client.getAddress(), client.getPort()));
+            else
+            {
+                byte[] r = new byte[data.remaining()];
+                data.duplicate().get(r);
+                getRawSocket(client).send(new DatagramPacket(r, r.length, client.getAddress(), client.getPort()));
+            }
         } 
         catch(IOException ex)
         {
-            System.err.println("] ERROR:  Could not send data to " + client.getClientIdentifier() + "! DataSize: " + data.length + "B");
+            System.err.println("] ERROR:  Could not send data to " + client.getClientIdentifier() + "! DataSize: " + data.remaining() + "B");
+            sendFailed(client);
         }
     }
     
     @Override
-    protected synchronized void removeClient(ServerClient client)
+    protected void removeClient(ServerClient client)
     {
-        idenToClient.remove(client.getAddress().getHostAddress() + ":" + client.getPort());
+        addrToClient.remove(client);
     }
 }
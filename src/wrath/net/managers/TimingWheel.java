@@ -0,0 +1,190 @@
+/**
+ * The MIT License (MIT)
+ * Wrath Net Engine Copyright (c) 2016 Trent Spears
+ */
+package wrath.net.managers;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timing wheel, a timer that can track a very large number of timeouts with one thread and constant cost per timeout.
+ * Time is cut into ticks, and the wheel is a ring of buckets, one per tick. A timeout goes into the bucket of the tick it expires in, together with the number of turns of the wheel left until then.
+ * Every tick, the thread only looks at the timeouts of one bucket, so scheduling, cancelling and expiring a timeout never depends on how many others there are.
+ * Timeouts fire up to one tick late. Their tasks run on the timer thread, so they must be short.
+ * @author Trent Spears
+ */
+public class TimingWheel
+{
+    private final ConcurrentLinkedQueue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final Timeout[] heads;
+    private final int mask;
+    private volatile long now;
+    private final long start;
+    private volatile boolean stopped = false;
+    private final Thread thread;
+    private long tick = 0;
+    private final long tickNanos;
+
+    /**
+     * Constructor. The timer thread is started right away.
+     * @param name The name of the timer thread.
+     * @param tickDuration The length of one tick.
+     * @param unit The {@link java.util.concurrent.TimeUnit} of the tick length.
+     * @param ticksPerWheel The number of buckets. Rounded up to the next power of two.
+     */
+    public TimingWheel(String name, long tickDuration, TimeUnit unit, int ticksPerWheel)
+    {
+        int size = Integer.highestOneBit(Math.max(2, ticksPerWheel) - 1) << 1;
+        this.heads = new Timeout[size];
+        this.mask = size - 1;
+        this.tickNanos = Math.max(1, unit.toNanos(tickDuration));
+        this.start = System.nanoTime();
+        this.now = start;
+        this.thread = new Thread(this::run);
+        thread.setName(name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Gets the time of the last tick. Reading it is much cheaper than {@link java.lang.System#nanoTime()}, and accurate to one tick.
+     * @return Returns the time of the last tick, on the same scale as {@link java.lang.System#nanoTime()}.
+     */
+    public long now()
+    {
+        return now;
+    }
+
+    /**
+     * Body of the timer thread.
+     */
+    private void run()
+    {
+        while(!stopped)
+        {
+            long deadline = start + (tick + 1) * tickNanos;
+            long wait;
+            while((wait = deadline - System.nanoTime()) > 0 && !stopped) LockSupport.parkNanos(this, wait);
+            now = System.nanoTime();
+
+            // Put timeouts scheduled since the last tick into their buckets.
+            Timeout t;
+            while((t = added.poll()) != null)
+            {
+                if(t.state.get() != Timeout.PENDING) continue;
+                long ticks = Math.max(tick, (t.deadline - start) / tickNanos);
+                t.rounds = (ticks - tick) / heads.length;
+                int i = (int) (ticks & mask);
+                t.next = heads[i];
+                if(heads[i] != null) heads[i].prev = t;
+                heads[i] = t;
+            }
+
+            // Expire the timeouts of the current bucket whose turn it is.
+            int i = (int) (tick & mask);
+            t = heads[i];
+            while(t != null)
+            {
+                Timeout next = t.next;
+                if(t.state.get() != Timeout.PENDING) unlink(i, t);
+                else if(t.rounds <= 0)
+                {
+                    unlink(i, t);
+                    if(t.state.compareAndSet(Timeout.PENDING, Timeout.EXPIRED))
+                    {
+                        try
+                        {
+                            t.task.run();
+                        }
+                        catch(Exception e)
+                        {
+                            System.err.println("] ERROR: Unexpected error in timer task on " + thread.getName() + "!");
+                        }
+                    }
+                }
+                else t.rounds--;
+                t = next;
+            }
+            tick++;
+        }
+    }
+
+    /**
+     * Runs a task once the specified delay has passed.
+     * @param task The {@link java.lang.Runnable} to run on the timer thread.
+     * @param delay The time to wait before running the task.
+     * @param unit The {@link java.util.concurrent.TimeUnit} of the delay.
+     * @return Returns the {@link wrath.net.managers.TimingWheel.Timeout}, which can be used to cancel the task.
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit)
+    {
+        Timeout t = new Timeout(task, System.nanoTime() + unit.toNanos(delay));
+        if(!stopped) added.add(t);
+        return t;
+    }
+
+    /**
+     * Stops the timer thread. Timeouts that have not expired yet never will.
+     */
+    public void stop()
+    {
+        stopped = true;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Removes a timeout from the list of its bucket.
+     */
+    private void unlink(int bucket, Timeout t)
+    {
+        if(t.prev != null) t.prev.next = t.next;
+        else heads[bucket] = t.next;
+        if(t.next != null) t.next.prev = t.prev;
+        t.prev = null;
+        t.next = null;
+    }
+
+    /**
+     * Class to represent one scheduled task.
+     */
+    public static class Timeout
+    {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final long deadline;
+        private Timeout next;
+        private Timeout prev;
+        private long rounds;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private final Runnable task;
+
+        private Timeout(Runnable task, long deadline)
+        {
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        /**
+         * Keeps the task from running. The timeout is dropped from its bucket the next time the timer thread passes it.
+         * @return Returns true if the task had not run yet. Otherwise false.
+         */
+        public boolean cancel()
+        {
+            return state.compareAndSet(PENDING, CANCELLED);
+        }
+
+        /**
+         * Checks if the task was run.
+         * @return Returns true if the task was run. Otherwise false.
+         */
+        public boolean isExpired()
+        {
+            return state.get() == EXPIRED;
+        }
+    }
+}
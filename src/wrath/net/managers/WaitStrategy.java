@@ -0,0 +1,138 @@
+/**
+ * The MIT License (MIT)
+ * Wrath Net Engine Copyright (c) 2016 Trent Spears
+ */
+package wrath.net.managers;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import wrath.util.Config;
+
+/**
+ * Class describing what a consumer thread does while its {@link wrath.net.managers.RingBuffer} is empty.
+ * This lets a Server or Client trade latency for CPU usage.
+ * The same instance may be shared by any number of queues; any state is kept by the queue itself.
+ * @author Trent Spears
+ */
+public abstract class WaitStrategy
+{
+    /**
+     * Never gives up the CPU. Lowest latency, but every consumer thread uses a full core even when idle.
+     */
+    public static final WaitStrategy BUSY_SPIN = new BusySpinWaitStrategy();
+    /**
+     * Spins briefly, then yields the CPU to other threads between checks.
+     */
+    public static final WaitStrategy SPIN_YIELD = new SpinYieldWaitStrategy(100);
+    /**
+     * Spins briefly, then parks the consumer thread until a producer wakes it up. Uses no CPU while idle.
+     * Producers always unpark a parked consumer, so the one second park limit is only a safety net.
+     */
+    public static final WaitStrategy BLOCKING = new BlockingWaitStrategy(100, TimeUnit.SECONDS.toNanos(1));
+
+    /**
+     * Gets the {@link wrath.net.managers.WaitStrategy} named by the "ExecWaitStrategy" option of the specified {@link wrath.util.Config}.
+     * Possible values are "spin", "yield" and "park". Defaults to "park".
+     * @param config The {@link wrath.util.Config} to read the option from.
+     * @return Returns the {@link wrath.net.managers.WaitStrategy} named by the config.
+     */
+    public static WaitStrategy fromConfig(Config config)
+    {
+        String name = config.getString("ExecWaitStrategy", "park");
+        if("spin".equalsIgnoreCase(name)) return BUSY_SPIN;
+        else if("yield".equalsIgnoreCase(name)) return SPIN_YIELD;
+        else if(!"park".equalsIgnoreCase(name)) System.err.println("] WARNING: Unknown ExecWaitStrategy '" + name + "', using 'park'.");
+        return BLOCKING;
+    }
+
+    /**
+     * Called by the consumer thread each time it finds its queue empty.
+     * @param idleCount The number of times in a row the queue has been found empty, starting at 0.
+     * @param queue The {@link wrath.net.managers.RingBuffer} being waited on.
+     */
+    public abstract void idle(int idleCount, RingBuffer<?> queue);
+
+    /**
+     * Called by a producer thread after it has published to the queue.
+     * @param queue The {@link wrath.net.managers.RingBuffer} that was published to.
+     */
+    public void signal(RingBuffer<?> queue) {}
+
+    /**
+     * Never gives up the CPU.
+     */
+    public static class BusySpinWaitStrategy extends WaitStrategy
+    {
+        @Override
+        public void idle(int idleCount, RingBuffer<?> queue)
+        {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Spins for a number of checks, then yields the CPU between checks.
+     */
+    public static class SpinYieldWaitStrategy extends WaitStrategy
+    {
+        private final int spins;
+
+        /**
+         * Constructor.
+         * @param spins The number of checks to spin for before yielding.
+         */
+        public SpinYieldWaitStrategy(int spins)
+        {
+            this.spins = spins;
+        }
+
+        @Override
+        public void idle(int idleCount, RingBuffer<?> queue)
+        {
+            if(idleCount < spins) Thread.onSpinWait();
+            else Thread.yield();
+        }
+    }
+
+    /**
+     * Spins for a number of checks, then parks the consumer thread until a producer signals it.
+     */
+    public static class BlockingWaitStrategy extends WaitStrategy
+    {
+        private final long maxParkNanos;
+        private final int spins;
+
+        /**
+         * Constructor.
+         * @param spins The number of checks to spin for before parking.
+         * @param maxParkNanos The longest time, in nanoseconds, to stay parked before checking the queue again.
+         */
+        public BlockingWaitStrategy(int spins, long maxParkNanos)
+        {
+            this.maxParkNanos = maxParkNanos;
+            this.spins = spins;
+        }
+
+        @Override
+        public void idle(int idleCount, RingBuffer<?> queue)
+        {
+            if(idleCount < spins)
+            {
+                Thread.onSpinWait();
+                return;
+            }
+
+            // Announce the wait before the last check, so a producer publishing in between will see it and unpark.
+            queue.waiter = Thread.currentThread();
+            if(queue.isEmpty()) LockSupport.parkNanos(this, maxParkNanos);
+            queue.waiter = null;
+        }
+
+        @Override
+        public void signal(RingBuffer<?> queue)
+        {
+            Thread t = queue.waiter;
+            if(t != null) LockSupport.unpark(t);
+        }
+    }
+}